@@ -0,0 +1,142 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Captures steno chords from an NKRO QWERTY keyboard, without Plover.
+// QWERTY keys are mapped to steno keys as shown by the on-screen
+// keyboard, and the number row is the number key. A chord is complete
+// when all its keys have been released. The press and release time of
+// each steno key are recorded, so that every chord also measures its
+// press spread (first to last press), release spread (first to last
+// release) and formation time (first press to last release).
+public class ChordCapture {
+  // Steno key index for each on-screen keyboard position
+  final int[][] stenoKeys = {
+    {1, 2, 4, 6, 10, 13, 15, 17, 19, 21},
+    {1, 3, 5, 7, 10, 14, 16, 18, 20, 22},
+    {8, 9, 11, 12}
+  };
+
+  // Steno key index for each QWERTY char, -1 if not mapped
+  int[] qwertyToSteno = new int[128];
+
+  // QWERTY keys currently held
+  boolean[] heldKeys = new boolean[128];
+  int heldKeysCount = 0;
+
+  // Chord being formed and time of each of its steno keys
+  StenoChord chord = new StenoChord();
+  long[] pressTimes = new long[stenoOrder.length()];
+  long[] releaseTimes = new long[stenoOrder.length()];
+
+  // Timing of the last chord and running totals, in milliseconds
+  long lastPressSpread = 0;
+  long lastReleaseSpread = 0;
+  long lastFormationTime = 0;
+  long totalPressSpread = 0;
+  long totalReleaseSpread = 0;
+  long totalFormationTime = 0;
+  int capturedChords = 0;
+
+  // Default constructor, reads the key mapping from the keyboard
+  ChordCapture(Keyboard keyboard) {
+    Arrays.fill(qwertyToSteno, -1);
+    for (int row = 0; row < keyboard.qwertyRows.length; row++) {
+      for (int col = 0; col < keyboard.qwertyRows[row].length; col++) {
+        String qwertyKeys = keyboard.qwertyRows[row][col];
+        for (int i = 0; i < qwertyKeys.length(); i++) {
+          qwertyToSteno[Character.toLowerCase(qwertyKeys.charAt(i))] = stenoKeys[row][col];
+        }
+      }
+    }
+    for (char c = '0'; c <= '9'; c++) qwertyToSteno[c] = 0;
+  }
+
+  // Handle a key press, return false if the key isn't a steno key
+  boolean keyPressed(char c, long time) {
+    int stenoKey = getStenoKey(c);
+    if (stenoKey < 0) return false;
+    int qwertyKey = Character.toLowerCase(c);
+    // Ignore auto-repeat
+    if (heldKeys[qwertyKey]) return true;
+    heldKeys[qwertyKey] = true;
+    heldKeysCount++;
+    if (!chord.keys[stenoKey]) pressTimes[stenoKey] = time;
+    chord.press(stenoKey);
+    return true;
+  }
+
+  // Handle a key release. Return true if it completes a chord, which
+  // is then written into target.
+  boolean keyReleased(char c, long time, Stroke target) {
+    int stenoKey = getStenoKey(c);
+    if (stenoKey < 0) return false;
+    int qwertyKey = Character.toLowerCase(c);
+    if (!heldKeys[qwertyKey]) return false;
+    heldKeys[qwertyKey] = false;
+    heldKeysCount--;
+    releaseTimes[stenoKey] = time;
+    if (heldKeysCount > 0 || chord.isEmpty()) return false;
+
+    long firstPressTime = Long.MAX_VALUE;
+    long lastPressTime = 0;
+    long firstReleaseTime = Long.MAX_VALUE;
+    for (int i = 0; i < chord.keys.length; i++) {
+      if (!chord.keys[i]) continue;
+      firstPressTime = Math.min(firstPressTime, pressTimes[i]);
+      lastPressTime = Math.max(lastPressTime, pressTimes[i]);
+      firstReleaseTime = Math.min(firstReleaseTime, releaseTimes[i]);
+    }
+    lastPressSpread = lastPressTime - firstPressTime;
+    lastReleaseSpread = time - firstReleaseTime;
+    lastFormationTime = time - firstPressTime;
+    totalPressSpread += lastPressSpread;
+    totalReleaseSpread += lastReleaseSpread;
+    totalFormationTime += lastFormationTime;
+    capturedChords++;
+
+    target.stroke = chord.format();
+    target.word = "";
+    target.isDelete = target.stroke.equals("*");
+    target.time = time;
+    target.readTime = time;
+    chord.clear();
+    return true;
+  }
+
+  // Average press spread in milliseconds
+  float getAvgPressSpread() {
+    return capturedChords == 0 ? 0 : totalPressSpread / (float) capturedChords;
+  }
+
+  // Average release spread in milliseconds
+  float getAvgReleaseSpread() {
+    return capturedChords == 0 ? 0 : totalReleaseSpread / (float) capturedChords;
+  }
+
+  // Average formation time in milliseconds
+  float getAvgFormationTime() {
+    return capturedChords == 0 ? 0 : totalFormationTime / (float) capturedChords;
+  }
+
+  // Return the steno key of the char, -1 if none
+  int getStenoKey(char c) {
+    int qwertyKey = Character.toLowerCase(c);
+    return qwertyKey < qwertyToSteno.length ? qwertyToSteno[qwertyKey] : -1;
+  }
+}
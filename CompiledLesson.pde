@@ -0,0 +1,360 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Compiled lessons are snapshots of the .les, .chd and .blk files of a
+// lesson, stored next to them with this extension. The format is:
+//   header: magic, version, entry count, heap size (4 ints), checksum
+//     of the source files (1 long)
+//   entry table: word offset, word length, stroke offset, stroke length,
+//     stroke count and keys of the first chord of each entry (6 ints per
+//     entry, offsets are relative to the heap, keys are a bit mask of
+//     stenoOrder indexes)
+//   blacklist: one bit per entry, set if the word is blacklisted (longs)
+//   heap: UTF-8 bytes of all words and strokes
+// All values are big endian.
+final String compiledLessonExtension = ".lsb";
+final int compiledLessonMagic = 0x53544C42;
+final int compiledLessonVersion = 4;
+final int compiledLessonHeaderSize = 24;
+final int compiledLessonEntrySize = 24;
+
+// Lesson word stats are created in chunks of this size
+final int lessonChunkSize = 256;
+
+// Compiles the text files of a lesson into a single binary snapshot
+// that can be memory-mapped at startup
+public class LessonCompiler {
+  // Words and strokes read from the text files
+  ArrayList<String> words;
+  ArrayList<String> strokes;
+
+  // Whether the validator found problems in the last compiled lesson
+  boolean hasProblems = false;
+
+  // Read and validate the .les and .chd files, then return the compiled
+  // lesson as a buffer. Both files are read at the same time. The
+  // checksum identifies the source files, see getSourceChecksum().
+  ByteBuffer compile(String lesDictionaryFilePath, String chdDictionaryFilePath, ArrayList<String> wordsBlacklist, long checksum) {
+    LessonTokenReader wordReader = new LessonTokenReader(lesDictionaryFilePath);
+    LessonTokenReader strokeReader = new LessonTokenReader(chdDictionaryFilePath);
+    strokeReader.start();
+    wordReader.run();
+    try {
+      strokeReader.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    words = wordReader.tokens;
+    strokes = strokeReader.tokens;
+
+    LessonValidator validator = new LessonValidator();
+    hasProblems = !validator.validate(wordReader, strokeReader);
+    if (hasProblems) validator.printProblems();
+    int entryCount = min(words.size(), strokes.size());
+
+    // Encode all strings first to know the heap size
+    byte[][] encoded = new byte[entryCount * 2][];
+    int heapSize = 0;
+    try {
+      for (int i = 0; i < entryCount; i++) {
+        encoded[2 * i] = words.get(i).getBytes("UTF-8");
+        encoded[2 * i + 1] = strokes.get(i).getBytes("UTF-8");
+        heapSize += encoded[2 * i].length + encoded[2 * i + 1].length;
+      }
+    } catch (UnsupportedEncodingException e) {
+      println("Error while compiling lesson: " + e.getMessage());
+    }
+
+    int blacklistSize = getBlacklistSize(entryCount);
+    ByteBuffer image = ByteBuffer.allocate(compiledLessonHeaderSize + entryCount * compiledLessonEntrySize + blacklistSize + heapSize);
+    image.putInt(compiledLessonMagic);
+    image.putInt(compiledLessonVersion);
+    image.putInt(entryCount);
+    image.putInt(heapSize);
+    image.putLong(checksum);
+    int heapOffset = 0;
+    for (int i = 0; i < entryCount; i++) {
+      image.putInt(heapOffset);
+      image.putInt(encoded[2 * i].length);
+      heapOffset += encoded[2 * i].length;
+      image.putInt(heapOffset);
+      image.putInt(encoded[2 * i + 1].length);
+      heapOffset += encoded[2 * i + 1].length;
+      image.putInt(countStrokes(strokes.get(i)));
+      image.putInt(getFirstChordKeys(strokes.get(i)));
+    }
+
+    // Blacklisted words, trimmed or not, like the checks in StenoTutor
+    HashSet<String> blacklist = new HashSet<String>(wordsBlacklist);
+    long[] blacklistBits = new long[blacklistSize / 8];
+    for (int i = 0; i < entryCount; i++) {
+      if (blacklist.contains(words.get(i)) || blacklist.contains(words.get(i).trim())) blacklistBits[i / 64] |= 1L << (i % 64);
+    }
+    for (int i = 0; i < blacklistBits.length; i++) image.putLong(blacklistBits[i]);
+
+    for (int i = 0; i < entryCount * 2; i++) image.put(encoded[i]);
+    image.flip();
+    return image;
+  }
+
+  // Return the keys of the first chord of an outline as a bit mask of
+  // stenoOrder indexes. Keys out of steno order are left out, the
+  // validator reports them.
+  int getFirstChordKeys(String outline) {
+    int keys = 0;
+    int key = 0;
+    for (int i = 0; i < outline.length() && outline.charAt(i) != '/'; i++) {
+      char c = outline.charAt(i);
+      int found;
+      if (c == '-') {
+        key = max(key, firstRightKey);
+        continue;
+      } else if (c >= '0' && c <= '9') {
+        keys |= 1;
+        found = digitKeys[c - '0'] >= key ? digitKeys[c - '0'] : -1;
+      } else {
+        found = stenoOrder.indexOf(c, key);
+      }
+      if (found < 0) continue;
+      keys |= 1 << found;
+      key = found + 1;
+    }
+    return keys;
+  }
+
+  // Checksum of the lesson source files. Each file contributes its
+  // length, -1 if it does not exist, and its content.
+  long getSourceChecksum(String[] filePaths) throws IOException {
+    CRC32 crc = new CRC32();
+    ByteBuffer length = ByteBuffer.allocate(8);
+    for (String filePath : filePaths) {
+      Path path = Paths.get(filePath);
+      byte[] content = Files.exists(path) ? Files.readAllBytes(path) : null;
+      length.clear();
+      length.putLong(content != null ? content.length : -1);
+      crc.update(length.array());
+      if (content != null) crc.update(content);
+    }
+    return crc.getValue();
+  }
+
+  // Write a compiled lesson, replacing the old one only once the new one
+  // is complete
+  void write(ByteBuffer image, String compiledFilePath) throws IOException {
+    Path target = Paths.get(compiledFilePath);
+    Path temp = Paths.get(compiledFilePath + ".tmp");
+    FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      ByteBuffer source = image.duplicate();
+      while (source.hasRemaining()) channel.write(source);
+    } finally {
+      channel.close();
+    }
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
+
+// Number of strokes of an outline
+int countStrokes(String outline) {
+  int count = 1;
+  for (int i = 0; i < outline.length(); i++) {
+    if (outline.charAt(i) == '/') count++;
+  }
+  return count;
+}
+
+// Size in bytes of the blacklist bits of the given number of entries
+int getBlacklistSize(int entryCount) {
+  return (entryCount + 63) / 64 * 8;
+}
+
+// A compiled lesson, usually memory-mapped. Entries are decoded only
+// when they are read.
+public class CompiledLesson {
+  ByteBuffer image;
+  int entryCount;
+  int blacklistStart;
+  int heapStart;
+
+  // Wrap a compiled lesson image
+  CompiledLesson(ByteBuffer image) {
+    this.image = image;
+    if (image.limit() < compiledLessonHeaderSize) return;
+    entryCount = image.getInt(8);
+    blacklistStart = compiledLessonHeaderSize + entryCount * compiledLessonEntrySize;
+    heapStart = blacklistStart + getBlacklistSize(entryCount);
+  }
+
+  // Whether the image is a complete compiled lesson of the current
+  // version, compiled from the source files with the given checksum
+  boolean isValid(long checksum) {
+    if (image.limit() < compiledLessonHeaderSize) return false;
+    if (image.getInt(0) != compiledLessonMagic || image.getInt(4) != compiledLessonVersion) return false;
+    if (image.getLong(16) != checksum) return false;
+    return entryCount >= 0 && (long) heapStart + image.getInt(12) == image.limit();
+  }
+
+  // Read the blacklist bits
+  BitSet getBlacklist() {
+    long[] bits = new long[getBlacklistSize(entryCount) / 8];
+    for (int i = 0; i < bits.length; i++) bits[i] = image.getLong(blacklistStart + i * 8);
+    return BitSet.valueOf(bits);
+  }
+
+  // Number of entries
+  int size() {
+    return entryCount;
+  }
+
+  // Decode the word of the given entry
+  String getWord(int index) {
+    return getString(compiledLessonHeaderSize + index * compiledLessonEntrySize);
+  }
+
+  // Decode the stroke of the given entry
+  String getStroke(int index) {
+    return getString(compiledLessonHeaderSize + index * compiledLessonEntrySize + 8);
+  }
+
+  // Decode the heap string whose offset and length are at the given
+  // position of the entry table
+  String getString(int tablePosition) {
+    int offset = image.getInt(tablePosition);
+    int length = image.getInt(tablePosition + 4);
+    byte[] bytes = new byte[length];
+    ByteBuffer source = image.duplicate();
+    source.position(heapStart + offset);
+    source.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      return "";
+    }
+  }
+}
+
+// The lesson dictionary, backed by a DictionaryStore. Words and strokes
+// are decoded from the store when they are read, and the last ones are
+// kept in small caches indexed by entry, since the same few words are
+// drawn every frame. The caches are only used by the sketch thread;
+// other threads read the store. Comparisons and trimming read the store
+// directly.
+public class LessonDictionary {
+  DictionaryStore store;
+
+  // Decoded words and strokes, and the index each one belongs to, by
+  // index modulo decodedCacheSize
+  final int decodedCacheSize = 1024;
+  int[] cachedWordIndexes = new int[decodedCacheSize];
+  String[] cachedWords = new String[decodedCacheSize];
+  int[] cachedStrokeIndexes = new int[decodedCacheSize];
+  String[] cachedStrokes = new String[decodedCacheSize];
+
+  // Default constructor
+  LessonDictionary(DictionaryStore store) {
+    this.store = store;
+    Arrays.fill(cachedWordIndexes, -1);
+    Arrays.fill(cachedStrokeIndexes, -1);
+  }
+
+  // Number of words in the lesson
+  int size() {
+    return store.size();
+  }
+
+  // Return the word text at the given index
+  String getWord(int index) {
+    int slot = index % decodedCacheSize;
+    if (cachedWordIndexes[slot] != index) {
+      cachedWords[slot] = store.getWord(index);
+      cachedWordIndexes[slot] = index;
+    }
+    return cachedWords[slot];
+  }
+
+  // Return the word text at the given index without leading and
+  // trailing whitespace, allocating only if there is any
+  String getTrimmedWord(int index) {
+    if (store.trimmedWordLengths[index] == store.wordLengths[index]) return getWord(index);
+    return store.getTrimmedWord(index);
+  }
+
+  // Return the stroke at the given index
+  String getStroke(int index) {
+    int slot = index % decodedCacheSize;
+    if (cachedStrokeIndexes[slot] != index) {
+      cachedStrokes[slot] = store.getStroke(index);
+      cachedStrokeIndexes[slot] = index;
+    }
+    return cachedStrokes[slot];
+  }
+
+  // Whether text, once trimmed, equals the word at the given index
+  boolean matchesTrimmed(int index, String text) {
+    return store.matchesTrimmed(index, text);
+  }
+
+  // Number of strokes of the outline at the given index
+  int getStrokeCount(int index) {
+    return store.strokeCounts[index];
+  }
+
+  // Keys of the first chord at the given index, as a bit mask of
+  // stenoOrder indexes
+  int getChordKeys(int index) {
+    return store.chordKeys[index];
+  }
+
+  // Whether the word at the given index is blacklisted
+  boolean isBlacklisted(int index) {
+    return store.isBlacklisted(index);
+  }
+
+  // Blacklist all the occurrences of the given word
+  void blacklistWord(String word) {
+    store.blacklistWord(word);
+  }
+}
+
+// Creates the word stats of an index range in the background, so that
+// they are ready when the next level unlocks them
+public class LessonPrefetcher extends Thread {
+  WordStatsList wordStats;
+  int from;
+  int to;
+
+  // Default constructor
+  LessonPrefetcher(WordStatsList wordStats, int from, int to) {
+    this.wordStats = wordStats;
+    this.from = from;
+    this.to = to;
+    setDaemon(true);
+  }
+
+  // Create the chunks of the range
+  void run() {
+    wordStats.create(from, to);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Compact storage of all the lesson words and strokes: their UTF-8
+// bytes packed in the heap of the compiled lesson, read where it is
+// mapped, and parallel int arrays with the offset and length of each
+// word and stroke, plus the bounds of each word without leading and
+// trailing whitespace. Stroke counts, first chord keys and blacklisted
+// words are precomputed by LessonCompiler. Entries are accessed by
+// index, so scanning the lesson does not decode any string. The heap is
+// only read with absolute gets, so any thread can read the store.
+public class DictionaryStore {
+  // Packed word and stroke bytes
+  ByteBuffer heap;
+
+  // Bounds of each word and stroke in the heap
+  int[] wordOffsets;
+  int[] wordLengths;
+  int[] strokeOffsets;
+  int[] strokeLengths;
+
+  // Bounds of each word once trimmed
+  int[] trimmedWordOffsets;
+  int[] trimmedWordLengths;
+
+  // Number of strokes and keys of the first chord of each entry
+  int[] strokeCounts;
+  int[] chordKeys;
+
+  // Blacklisted entries
+  BitSet blacklist;
+
+  // Read the entry table of a compiled lesson, keeping its heap where
+  // it is
+  DictionaryStore(CompiledLesson lesson) {
+    int size = lesson.size();
+    wordOffsets = new int[size];
+    wordLengths = new int[size];
+    strokeOffsets = new int[size];
+    strokeLengths = new int[size];
+    trimmedWordOffsets = new int[size];
+    trimmedWordLengths = new int[size];
+    strokeCounts = new int[size];
+    chordKeys = new int[size];
+    ByteBuffer image = lesson.image.duplicate();
+    image.position(compiledLessonHeaderSize);
+    IntBuffer table = image.slice().asIntBuffer();
+    for (int i = 0; i < size; i++) {
+      wordOffsets[i] = table.get();
+      wordLengths[i] = table.get();
+      strokeOffsets[i] = table.get();
+      strokeLengths[i] = table.get();
+      strokeCounts[i] = table.get();
+      chordKeys[i] = table.get();
+    }
+    blacklist = lesson.getBlacklist();
+    image.position(lesson.heapStart);
+    heap = image.slice();
+
+    for (int i = 0; i < size; i++) {
+      int start = wordOffsets[i];
+      int end = start + wordLengths[i];
+      while (start < end && (heap.get(start) & 0xFF) <= ' ') start++;
+      while (end > start && (heap.get(end - 1) & 0xFF) <= ' ') end--;
+      trimmedWordOffsets[i] = start;
+      trimmedWordLengths[i] = end - start;
+    }
+  }
+
+  // Number of entries
+  int size() {
+    return wordOffsets.length;
+  }
+
+  // Decode the word of the given entry
+  String getWord(int index) {
+    return decode(wordOffsets[index], wordLengths[index]);
+  }
+
+  // Decode the word of the given entry without leading and trailing
+  // whitespace
+  String getTrimmedWord(int index) {
+    return decode(trimmedWordOffsets[index], trimmedWordLengths[index]);
+  }
+
+  // Decode the stroke of the given entry
+  String getStroke(int index) {
+    return decode(strokeOffsets[index], strokeLengths[index]);
+  }
+
+  // Decode the heap bytes at the given bounds
+  String decode(int offset, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) bytes[i] = heap.get(offset + i);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Whether text equals the word of the given entry once leading and
+  // trailing whitespace is ignored, like utils.equalsTrimmed(). ASCII
+  // words are compared in place.
+  boolean matchesTrimmed(int index, String text) {
+    int start = 0;
+    int end = text.length();
+    while (start < end && text.charAt(start) <= ' ') start++;
+    while (end > start && text.charAt(end - 1) <= ' ') end--;
+    int offset = trimmedWordOffsets[index];
+    int length = trimmedWordLengths[index];
+    for (int i = 0; i < length; i++) {
+      if (heap.get(offset + i) < 0) return utils.equalsTrimmed(text, getWord(index));
+    }
+    if (end - start != length) return false;
+    for (int i = 0; i < length; i++) {
+      if (text.charAt(start + i) != heap.get(offset + i)) return false;
+    }
+    return true;
+  }
+
+  // Whether the given entry is blacklisted
+  boolean isBlacklisted(int index) {
+    return blacklist.get(index);
+  }
+
+  // Blacklist all the entries whose word, trimmed or not, is the given
+  // one
+  void blacklistWord(String word) {
+    byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < size(); i++) {
+      if (equalsHeap(bytes, wordOffsets[i], wordLengths[i]) ||
+        equalsHeap(bytes, trimmedWordOffsets[i], trimmedWordLengths[i])) {
+        blacklist.set(i);
+      }
+    }
+  }
+
+  // Whether the heap bytes at the given bounds are the given ones
+  boolean equalsHeap(byte[] bytes, int offset, int length) {
+    if (bytes.length != length) return false;
+    for (int i = 0; i < length; i++) {
+      if (heap.get(offset + i) != bytes[i]) return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Input typed for the current word, matched against it one char at a
+// time. Each typed or deleted char updates the match state in constant
+// time, so the input is always known to be a prefix of the word, a
+// mismatch, or complete. Like trim().equals(), leading and trailing
+// whitespace is ignored.
+public class InputBuffer {
+  // Typed chars
+  char[] chars = new char[64];
+  int length = 0;
+
+  // Word the input is matched against
+  String target = "";
+
+  // Index of the first char that is not whitespace, length if none
+  int contentStart = 0;
+
+  // Number of target chars matched so far and whitespace typed after
+  // the whole target
+  int matchedLength = 0;
+  int trailingWhitespace = 0;
+
+  // Index of the first char that does not match the target, -1 if none
+  int mismatchIndex = -1;
+
+  // Trimmed input, built only when shown after a change
+  String text = "";
+  boolean isTextChanged = false;
+
+  // Match the input against a new word
+  void setTarget(String target) {
+    this.target = target;
+    int typedLength = length;
+    clear();
+    for (int i = 0; i < typedLength; i++) match(chars[i]);
+  }
+
+  // Append a typed char
+  void append(char c) {
+    if (length == chars.length) chars = Arrays.copyOf(chars, length * 2);
+    chars[length] = c;
+    match(c);
+  }
+
+  // Append all the chars of the given text
+  void append(String text) {
+    for (int i = 0; i < text.length(); i++) append(text.charAt(i));
+  }
+
+  // Update the match state with the char just stored at index length
+  void match(char c) {
+    int index = length++;
+    isTextChanged = true;
+    if (contentStart == index && c <= ' ') {
+      contentStart++;
+    } else if (mismatchIndex >= 0) {
+      return;
+    } else if (trailingWhitespace == 0 && matchedLength < target.length() && c == target.charAt(matchedLength)) {
+      matchedLength++;
+    } else if (matchedLength == target.length() && c <= ' ') {
+      trailingWhitespace++;
+    } else {
+      mismatchIndex = index;
+    }
+  }
+
+  // Delete the last typed char, if any
+  void deleteLast() {
+    if (length == 0) return;
+    int index = --length;
+    isTextChanged = true;
+    if (mismatchIndex == index) {
+      mismatchIndex = -1;
+    } else if (mismatchIndex >= 0) {
+      return;
+    } else if (contentStart > index) {
+      contentStart = index;
+    } else if (trailingWhitespace > 0) {
+      trailingWhitespace--;
+    } else {
+      matchedLength--;
+    }
+  }
+
+  // Delete the given number of chars from the end
+  void delete(int count) {
+    for (int i = 0; i < count; i++) deleteLast();
+  }
+
+  // Replace the input with the given text
+  void set(String text) {
+    clear();
+    append(text);
+  }
+
+  // Delete all the input
+  void clear() {
+    length = 0;
+    contentStart = 0;
+    matchedLength = 0;
+    trailingWhitespace = 0;
+    mismatchIndex = -1;
+    isTextChanged = true;
+  }
+
+  // Whether nothing has been typed
+  boolean isEmpty() {
+    return length == 0;
+  }
+
+  // Whether the input, once trimmed, equals the target
+  boolean isComplete() {
+    return mismatchIndex < 0 && matchedLength == target.length();
+  }
+
+  // Whether the input can no longer become the target without deleting
+  boolean isMismatch() {
+    return mismatchIndex >= 0;
+  }
+
+  // Trimmed input, for display
+  String getText() {
+    if (isTextChanged) {
+      int end = length;
+      while (end > contentStart && chars[end - 1] <= ' ') end--;
+      text = new String(chars, contentStart, end - contentStart);
+      isTextChanged = false;
+    }
+    return text;
+  }
+}
@@ -43,8 +43,17 @@ public class Keyboard {
   int keySizeX = 50;
   int keySizeY = 50;
 
+  // Position of each stenoOrder key as row and column pairs. The
+  // number key is not shown.
+  int[][] keyPositions = {
+    {},
+    {0, 0, 1, 0}, {0, 1}, {1, 1}, {0, 2}, {1, 2}, {0, 3}, {1, 3},
+    {2, 0}, {2, 1}, {0, 4, 1, 4}, {2, 2}, {2, 3},
+    {0, 5}, {1, 5}, {0, 6}, {1, 6}, {0, 7}, {1, 7}, {0, 8}, {1, 8}, {0, 9}, {1, 9}
+  };
+
   // Keyboard state variables
-  String lastStroke = "";
+  int lastChordKeys = -1;
   boolean[][] pressedKeys;
 
   // Default constructor
@@ -54,13 +63,14 @@ public class Keyboard {
     showQwerty = showKeyboardQwerty;
   }
 
-  // Draw keyboard
-  void draw(String stroke) {
-    if (lastStroke != stroke) {
-      lastStroke = stroke;
+  // Draw keyboard, showing the given chord keys as pressed. Keys are a
+  // bit mask of stenoOrder indexes, see LessonCompiler.
+  void draw(int chordKeys) {
+    if (lastChordKeys != chordKeys) {
+      lastChordKeys = chordKeys;
 
       // Get and set pressedKeys[][]
-      pressedKeys = getPressedKeys(stroke);
+      pressedKeys = getPressedKeys(chordKeys);
     }
     // Top row
     drawRaw(0, 10, x, y );
@@ -85,111 +95,15 @@ public class Keyboard {
     }
   }
 
-  // Return the pressed keys corresponding to the given stroke
-  boolean[][] getPressedKeys(String stroke) {
+  // Return the pressed keys corresponding to the given chord keys
+  boolean[][] getPressedKeys(int chordKeys) {
     boolean[][] result = new boolean[3][10];
-    //result[1][5] = true;
-    int index = stroke.indexOf("A");
-    if (index == -1) index = stroke.indexOf("O");
-    if (index == -1) index = stroke.indexOf("-");
-    if (index == -1) index = stroke.indexOf("*");
-    if (index == -1) index = stroke.indexOf("E");
-    if (index == -1) index = stroke.indexOf("U");
-
-    // The chord only contains left side consonants
-    if (index == -1) {
-      setLeftConsonants(stroke, result);
-    } else if (index > 0) { // both left side consonants and other keys
-      setLeftConsonants(stroke.substring(0,index), result);
-      setVowelsAndRightConsonants(stroke.substring(index, stroke.length()), result);
-    } else { // only other keys
-      setVowelsAndRightConsonants(stroke, result);
+    for (int key = 0; key < keyPositions.length; key++) {
+      if ((chordKeys & (1 << key)) == 0) continue;
+      for (int i = 0; i < keyPositions[key].length; i += 2) {
+        result[keyPositions[key][i]][keyPositions[key][i + 1]] = true;
+      }
     }
-
     return result;
   }
 }
-
-// Read all vowels, right consonants and '*' and set the corresponding pressed keys
-// in the result array
-void setVowelsAndRightConsonants(String substroke, boolean[][] result) {
-  for (int i = 0; i < substroke.length(); i++) {
-    char stenoKey = substroke.charAt(i);
-    if (stenoKey == '*') {
-      result[0][4] = true;
-      result[1][4] = true;
-    }
-    else if (stenoKey == 'A') {
-      result[2][0] = true;
-    }
-    else if (stenoKey == 'O') {
-      result[2][1] = true;
-    }
-    else if (stenoKey == 'E') {
-      result[2][2] = true;
-    }
-    else if (stenoKey == 'U') {
-      result[2][3] = true;
-    }
-    else if (stenoKey == 'F') {
-      result[0][5] = true;
-    }
-    else if (stenoKey == 'R') {
-      result[1][5] = true;
-    }
-    else if (stenoKey == 'P') {
-      result[0][6] = true;
-    }
-    else if (stenoKey == 'B') {
-      result[1][6] = true;
-    }
-    else if (stenoKey == 'L') {
-      result[0][7] = true;
-    }
-    else if (stenoKey == 'G') {
-      result[1][7] = true;
-    }
-    else if (stenoKey == 'T') {
-      result[0][8] = true;
-    }
-    else if (stenoKey == 'S') {
-      result[1][8] = true;
-    }
-    else if (stenoKey == 'D') {
-      result[0][9] = true;
-    }
-    else if (stenoKey == 'Z') {
-      result[1][9] = true;
-    }
-  }
-}
-
-// Read all left consonants and set the corresponding pressed keys
-// in the result array
-void setLeftConsonants(String substroke, boolean[][] result) {
-  for (int i = 0; i < substroke.length(); i++) {
-    char stenoKey = substroke.charAt(i);
-    if (stenoKey == 'S') {
-      result[0][0] = true;
-      result[1][0] = true;
-    }
-    else if (stenoKey == 'T') {
-      result[0][1] = true;
-    }
-    else if (stenoKey == 'K') {
-      result[1][1] = true;
-    }
-    else if (stenoKey == 'P') {
-      result[0][2] = true;
-    }
-    else if (stenoKey == 'W') {
-      result[1][2] = true;
-    }
-    else if (stenoKey == 'H') {
-      result[0][3] = true;
-    }
-    else if (stenoKey == 'R') {
-      result[1][3] = true;
-    }
-  }
-}
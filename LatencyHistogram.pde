@@ -0,0 +1,172 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Histogram of latencies in milliseconds with constant time recording.
+// Values below 64 ms have their own bucket, larger values share
+// log-linear buckets, 32 per power of two, so that any recorded value
+// is known within about 3%. Values above 4 hours share the last bucket.
+public class LatencyHistogram {
+  // Name of the measured stage
+  String name;
+
+  // Bucket counters
+  long[] counts = new long[640];
+
+  // Number, sum and maximum of the recorded values
+  long count;
+  long sum;
+  long max;
+
+  // Default constructor
+  LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  // Record a latency. Negative values, caused by clocks that are not
+  // perfectly in sync, are recorded as zero.
+  void record(long latency) {
+    if (latency < 0) latency = 0;
+    counts[getBucketIndex(latency)]++;
+    count++;
+    sum += latency;
+    if (latency > max) max = latency;
+  }
+
+  // Return the bucket of the given latency
+  int getBucketIndex(long latency) {
+    if (latency < 64) return (int) latency;
+    int exponent = 63 - Long.numberOfLeadingZeros(latency);
+    if (exponent > 23) return counts.length - 1;
+    int subBucket = (int) (latency >> (exponent - 5)) & 31;
+    return 64 + (exponent - 6) * 32 + subBucket;
+  }
+
+  // Return the lowest latency that falls in the given bucket
+  long getBucketValue(int index) {
+    if (index < 64) return index;
+    int exponent = (index - 64) / 32 + 6;
+    return (long) (32 + (index - 64) % 32) << (exponent - 5);
+  }
+
+  // Return the latency below which the given fraction of the values fall
+  long getPercentile(float fraction) {
+    if (count == 0) return 0;
+    long rank = (long) Math.ceil(fraction * count);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) return Math.min(getBucketValue(i), max);
+    }
+    return max;
+  }
+
+  // Average latency
+  float getAvg() {
+    return count == 0 ? 0 : (float) sum / count;
+  }
+
+  // One line summary of this histogram
+  String summary() {
+    return name + ": " + count + " strokes, avg " + (int) getAvg() +
+      ", p50 " + getPercentile(0.5) +
+      ", p90 " + getPercentile(0.9) +
+      ", p99 " + getPercentile(0.99) +
+      ", max " + max + " ms";
+  }
+
+  // Write the summary and the non empty buckets
+  void write(PrintWriter writer) {
+    writer.println(summary());
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) writer.println("  " + getBucketValue(i) + " ms\t" + counts[i]);
+    }
+  }
+}
+
+// Measures where the time goes between Plover writing a stroke and
+// StenoTutor drawing it: the log timestamp, the time a stroke source
+// read it, the time checkBuffer() matched it and the time of the first
+// frame that rendered it. All the recording happens on the animation
+// thread, so no synchronization is needed.
+public class LatencyMonitor {
+  // Write to read: file system, log watcher and stroke sources
+  LatencyHistogram readLatency = new LatencyHistogram("Write to read");
+
+  // Read to frame: stroke queues and wait for the next frame
+  LatencyHistogram queueLatency = new LatencyHistogram("Read to frame");
+
+  // Write to match: time until the word was accepted
+  LatencyHistogram matchLatency = new LatencyHistogram("Write to match");
+
+  // Write to frame: the whole pipeline
+  LatencyHistogram totalLatency = new LatencyHistogram("Write to frame");
+
+  // File written on exit, none if empty
+  String dumpPath;
+
+  // Default constructor
+  LatencyMonitor(String dumpPath) {
+    this.dumpPath = dumpPath;
+  }
+
+  // Record the strokes first rendered by the frame drawn at the given time
+  void recordFrame(Stroke[] batch, int size, long now) {
+    for (int i = 0; i < size; i++) {
+      Stroke stroke = batch[i];
+      stroke.renderTime = now;
+      if (stroke.readTime > 0) queueLatency.record(now - stroke.readTime);
+      if (stroke.time == 0) continue;
+      if (stroke.readTime > 0) readLatency.record(stroke.readTime - stroke.time);
+      totalLatency.record(now - stroke.time);
+    }
+  }
+
+  // Record the time the given stroke completed the current word
+  void recordMatch(Stroke stroke, long matchTime) {
+    stroke.matchTime = matchTime;
+    if (stroke.time > 0) matchLatency.record(matchTime - stroke.time);
+  }
+
+  // Draw the summary of all stages from the given baseline upwards
+  void draw(float x, float y) {
+    text(totalLatency.summary(), x, y);
+    text(matchLatency.summary(), x, y - 14);
+    text(queueLatency.summary(), x, y - 28);
+    text(readLatency.summary(), x, y - 42);
+  }
+
+  // Write all the histograms to the dump file. Processing calls this
+  // when the sketch exits.
+  void dispose() {
+    if (dumpPath.equals("")) return;
+    PrintWriter writer = null;
+    try {
+      writer = new PrintWriter(new FileWriter(dumpPath));
+      writer.println("StenoTutor stroke latency, " + new Date());
+      readLatency.write(writer);
+      queueLatency.write(writer);
+      matchLatency.write(writer);
+      totalLatency.write(writer);
+    } catch (Exception e) {
+      println("Error while writing latency dump: " + e.getMessage());
+    } finally {
+      if (writer != null) writer.close();
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Reads the space separated tokens of a lesson text file and remembers
+// where each one is. Empty lines and lines starting with '<' are
+// skipped. It can run as a thread, so that the .les and .chd files of a
+// lesson are read at the same time.
+public class LessonTokenReader extends Thread {
+  // Read file and its name, used in messages
+  String filePath;
+  String fileName;
+
+  // Tokens with their line and column, counting from 1
+  ArrayList<String> tokens = new ArrayList<String>();
+  IntList tokenLines = new IntList();
+  IntList tokenColumns = new IntList();
+
+  // Number of lines with tokens
+  int tokenLineCount = 0;
+
+  // Default constructor
+  LessonTokenReader(String filePath) {
+    this.filePath = filePath;
+    fileName = new File(filePath).getName();
+  }
+
+  // Read all the tokens
+  void run() {
+    String tempLine = null;
+    BufferedReader reader = null;
+    int line = 0;
+    try {
+      reader = new BufferedReader(new FileReader(filePath));
+      while ((tempLine = reader.readLine()) != null) {
+        line++;
+        if (tempLine.length() != 0 && tempLine.charAt(0) == '<' || tempLine.trim().length() == 0) continue;
+        tokenLineCount++;
+        int lineStart = tokens.size();
+        int start = 0;
+        while (true) {
+          int end = tempLine.indexOf(' ', start);
+          if (end < 0) end = tempLine.length();
+          tokens.add(tempLine.substring(start, end));
+          tokenLines.append(line);
+          tokenColumns.append(start + 1);
+          if (end == tempLine.length()) break;
+          start = end + 1;
+        }
+        // Like split(" "), drop empty tokens at the end of the line
+        while (tokens.size() > lineStart && tokens.get(tokens.size() - 1).length() == 0) {
+          tokens.remove(tokens.size() - 1);
+          tokenLines.remove(tokenLines.size() - 1);
+          tokenColumns.remove(tokenColumns.size() - 1);
+        }
+      }
+    }
+    catch (Exception e) {
+      println("Error while reading " + fileName + ": " + e.getMessage());
+    }
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (Exception e) {
+
+      }
+    }
+  }
+
+  // Location of the given token, as file:line:column
+  String getLocation(int index) {
+    return fileName + ":" + tokenLines.get(index) + ":" + tokenColumns.get(index);
+  }
+}
+
+// Checks that the words and strokes of a lesson line up and that each
+// stroke is written in steno order, and prints where each problem is
+public class LessonValidator {
+  // Problems found, and the number printed at most
+  ArrayList<String> problems = new ArrayList<String>();
+  final int maxPrintedProblems = 20;
+
+  // Validate the tokens of the .les and .chd files, return true if no
+  // problem was found
+  boolean validate(LessonTokenReader words, LessonTokenReader strokes) {
+    checkCounts(words, strokes);
+    for (int i = 0; i < words.tokens.size(); i++) {
+      if (words.tokens.get(i).length() == 0) problems.add(words.getLocation(i) + ": empty word");
+    }
+    for (int i = 0; i < strokes.tokens.size(); i++) {
+      checkStenoOrder(strokes, i);
+    }
+    return problems.isEmpty();
+  }
+
+  // Check that there is a stroke for each word. When both files have the
+  // same number of lines, the first line where they differ is reported.
+  void checkCounts(LessonTokenReader words, LessonTokenReader strokes) {
+    int wordCount = words.tokens.size();
+    int strokeCount = strokes.tokens.size();
+    if (wordCount == strokeCount) return;
+    String problem = words.fileName + " has " + wordCount + " words but " + strokes.fileName + " has " + strokeCount + " strokes";
+    int firstDifference = -1;
+    if (words.tokenLineCount == strokes.tokenLineCount) {
+      // The first token that is not on the matching line of the other
+      // file is on the line that differs
+      int wordLine = 0;
+      int strokeLine = 0;
+      for (int i = 1; i < min(wordCount, strokeCount) && firstDifference < 0; i++) {
+        if (words.tokenLines.get(i) != words.tokenLines.get(i - 1)) wordLine++;
+        if (strokes.tokenLines.get(i) != strokes.tokenLines.get(i - 1)) strokeLine++;
+        if (wordLine != strokeLine) firstDifference = i;
+      }
+    }
+    if (firstDifference < 0) firstDifference = min(wordCount, strokeCount);
+    if (firstDifference < wordCount && (firstDifference == strokeCount || wordLineIsLonger(words, strokes, firstDifference))) {
+      problem += ", first word without its stroke at " + words.getLocation(firstDifference);
+    } else {
+      problem += ", first stroke without its word at " + strokes.getLocation(firstDifference);
+    }
+    problems.add(problem + ". Only the first " + min(wordCount, strokeCount) + " are used.");
+  }
+
+  // Whether, at the first token where lines differ, the word line goes
+  // on while the stroke line has ended
+  boolean wordLineIsLonger(LessonTokenReader words, LessonTokenReader strokes, int index) {
+    return words.tokenLines.get(index) == words.tokenLines.get(index - 1);
+  }
+
+  // Check that the keys of each stroke of an outline are in steno order
+  void checkStenoOrder(LessonTokenReader strokes, int index) {
+    String outline = strokes.tokens.get(index);
+    if (outline.length() == 0) {
+      problems.add(strokes.getLocation(index) + ": empty stroke");
+      return;
+    }
+    int key = 0;
+    for (int i = 0; i < outline.length(); i++) {
+      char c = outline.charAt(i);
+      int found;
+      if (c == '/') {
+        if (i == 0 || i == outline.length() - 1 || outline.charAt(i - 1) == '/') {
+          addKeyProblem(strokes, index, i, "empty stroke in '" + outline + "'");
+          return;
+        }
+        key = 0;
+        continue;
+      } else if (c == '-') {
+        if (key > firstRightKey) {
+          addKeyProblem(strokes, index, i, "hyphen after right keys in '" + outline + "'");
+          return;
+        }
+        key = firstRightKey;
+        continue;
+      } else if (c >= '0' && c <= '9') {
+        found = digitKeys[c - '0'] >= key ? digitKeys[c - '0'] : -1;
+      } else {
+        found = stenoOrder.indexOf(c, key);
+      }
+      if (found < 0) {
+        boolean isKey = stenoOrder.indexOf(c) >= 0 || (c >= '0' && c <= '9');
+        addKeyProblem(strokes, index, i, (isKey ? "key '" + c + "' out of steno order" : "'" + c + "' is not a steno key") + " in '" + outline + "'");
+        return;
+      }
+      key = found + 1;
+    }
+  }
+
+  // Add a problem found at the given char of a stroke
+  void addKeyProblem(LessonTokenReader strokes, int index, int charIndex, String message) {
+    problems.add(strokes.fileName + ":" + strokes.tokenLines.get(index) + ":" + (strokes.tokenColumns.get(index) + charIndex) + ": " + message);
+  }
+
+  // Print the problems found
+  void printProblems() {
+    for (int i = 0; i < min(problems.size(), maxPrintedProblems); i++) {
+      println("Lesson error: " + problems.get(i));
+    }
+    if (problems.size() > maxPrintedProblems) {
+      println("Lesson error: " + (problems.size() - maxPrintedProblems) + " more problems not shown");
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Receives the lines found by a LineDecoder. The char array is reused
+// for the next line, so it must not be kept after the call.
+public interface LineHandler {
+  void handleLine(char[] line, int length);
+}
+
+// Splits UTF-8 bytes into lines and decodes them into a reusable char
+// buffer. Lines and multi-byte characters can span several calls, and
+// nothing is allocated once the line buffer has grown to fit.
+public class LineDecoder {
+  // Current incomplete line
+  char[] lineChars = new char[256];
+  int lineLength = 0;
+
+  // Code point being decoded and its missing continuation bytes
+  int codePoint = 0;
+  int pendingBytes = 0;
+
+  // Whether bytes are discarded up to the next line break
+  boolean isSkippingLine = false;
+
+  // Decode all the remaining bytes, passing each complete line to the handler
+  void decode(ByteBuffer bytes, LineHandler handler) {
+    while (bytes.hasRemaining()) {
+      int b = bytes.get() & 0xff;
+      if (isSkippingLine) {
+        if (b == '\n') isSkippingLine = false;
+        continue;
+      }
+      if (pendingBytes > 0) {
+        if ((b & 0xc0) == 0x80) {
+          codePoint = (codePoint << 6) | (b & 0x3f);
+          if (--pendingBytes == 0) appendCodePoint(codePoint);
+          continue;
+        }
+        // Truncated sequence, the current byte starts a new character
+        pendingBytes = 0;
+        append('\uFFFD');
+      }
+      if (b < 0x80) {
+        if (b == '\n') {
+          int length = lineLength;
+          if (length > 0 && lineChars[length - 1] == '\r') length--;
+          handler.handleLine(lineChars, length);
+          lineLength = 0;
+        } else {
+          append((char) b);
+        }
+      } else if ((b & 0xe0) == 0xc0) {
+        codePoint = b & 0x1f;
+        pendingBytes = 1;
+      } else if ((b & 0xf0) == 0xe0) {
+        codePoint = b & 0x0f;
+        pendingBytes = 2;
+      } else if ((b & 0xf8) == 0xf0) {
+        codePoint = b & 0x07;
+        pendingBytes = 3;
+      } else {
+        append('\uFFFD');
+      }
+    }
+  }
+
+  // Discard the current incomplete line and everything up to the next line break
+  void skipLine() {
+    reset();
+    isSkippingLine = true;
+  }
+
+  // Discard the current incomplete line
+  void reset() {
+    lineLength = 0;
+    pendingBytes = 0;
+    isSkippingLine = false;
+  }
+
+  // Append a decoded code point, as a surrogate pair if needed
+  void appendCodePoint(int codePoint) {
+    if (codePoint >= 0x10000) {
+      append(Character.highSurrogate(codePoint));
+      append(Character.lowSurrogate(codePoint));
+    } else {
+      append((char) codePoint);
+    }
+  }
+
+  // Append a char to the current line, growing the buffer if needed
+  void append(char c) {
+    if (lineLength == lineChars.length) lineChars = Arrays.copyOf(lineChars, lineLength * 2);
+    lineChars[lineLength++] = c;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// Follows a log file across rotation and truncation. It remembers the
+// identity of the open file (its file key, or its creation time where
+// the file system has no file keys) and the read position, so that each
+// call only reads newly appended bytes. A file smaller than the read
+// position has been truncated.
+public class LogFollower {
+  // Followed file
+  Path logPath;
+
+  // Open channel and identity of the file it belongs to
+  FileChannel channel;
+  Object fileKey;
+
+  // Next byte to read
+  long position;
+
+  // Number of rotations and truncations detected so far
+  int rotations;
+  int truncations;
+
+  // Maximum number of bytes inspected when looking for the last line break
+  final int maxLineBoundaryScan = 64 * 1024;
+
+  // Reusable read buffer and decoder of the current incomplete line
+  ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+  LineDecoder lineDecoder = new LineDecoder();
+
+  // Default constructor
+  LogFollower(String logFilePath) {
+    logPath = Paths.get(logFilePath).toAbsolutePath();
+  }
+
+  // Open the log file and go to its end, return false if the file
+  // cannot be opened
+  boolean open() {
+    if (!openChannel()) return false;
+    try {
+      seekToLastLineBoundary();
+    } catch (IOException e) {
+      println("Error while reading Plover log file: " + e.getMessage());
+      close();
+      return false;
+    }
+    return true;
+  }
+
+  // Open the log file again after an error or after it went missing,
+  // return false if the file cannot be opened. The same file resumes
+  // from the old position, a new one is read from its beginning.
+  boolean reopen() {
+    Object previousKey = fileKey;
+    if (!openChannel()) return false;
+    if (previousKey == null || !previousKey.equals(fileKey)) {
+      position = 0;
+      lineDecoder.reset();
+    }
+    return true;
+  }
+
+  // Go to the end of the file in constant time: seek to the end, then
+  // look back at most maxLineBoundaryScan bytes for the last line break.
+  // A line still being written is then read whole once it is complete.
+  // If no line break is found, its tail is skipped up to the next one.
+  void seekToLastLineBoundary() throws IOException {
+    long size = channel.size();
+    position = size;
+    long scanStart = Math.max(0, size - maxLineBoundaryScan);
+    while (position > scanStart) {
+      long chunkStart = Math.max(scanStart, position - readBuffer.capacity());
+      readBuffer.clear();
+      readBuffer.limit((int) (position - chunkStart));
+      channel.read(readBuffer, chunkStart);
+      for (int i = readBuffer.position() - 1; i >= 0; i--) {
+        if (readBuffer.get(i) == '\n') {
+          position = chunkStart + i + 1;
+          return;
+        }
+      }
+      position = chunkStart;
+    }
+    if (position > 0) {
+      position = size;
+      lineDecoder.skipLine();
+    }
+  }
+
+  // Pass the complete lines among the last sampleSize bytes of the file
+  // to the given handler, without moving the read position
+  void sampleTail(int sampleSize, LineHandler handler) throws IOException {
+    if (channel == null) return;
+    long end = channel.size();
+    long start = Math.max(0, end - sampleSize);
+    LineDecoder sampleDecoder = new LineDecoder();
+    if (start > 0) sampleDecoder.skipLine();
+    ByteBuffer sampleBuffer = ByteBuffer.allocate((int) (end - start));
+    channel.read(sampleBuffer, start);
+    sampleBuffer.flip();
+    sampleDecoder.decode(sampleBuffer, handler);
+  }
+
+  // Whether the size of the open file differs from the read position,
+  // that is the file grew or was truncated since the last read. Errors
+  // are reported as new data, so that the next read handles them.
+  boolean hasNewData() {
+    if (channel == null) return false;
+    try {
+      return channel.size() != position;
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  // Whether the log file is currently open
+  boolean isOpen() {
+    return channel != null;
+  }
+
+  // Pass all complete lines appended since the last call to the given
+  // handler. Rotation and truncation are detected here: a
+  // rotated file is read to its end before switching to the new file,
+  // which is then read from its beginning.
+  void readLines(LineHandler handler) throws IOException {
+    if (channel == null && !reopen()) return;
+
+    Object currentKey = readFileKey();
+    if (currentKey != null && !currentKey.equals(fileKey)) {
+      readAvailable(handler);
+      close();
+      rotations++;
+      lineDecoder.reset();
+      if (!openChannel()) return;
+      position = 0;
+    }
+
+    long size = channel.size();
+    if (size < position) {
+      // Truncated in place, anything after the old position is gone
+      truncations++;
+      position = 0;
+      lineDecoder.reset();
+    }
+    readAvailable(handler);
+  }
+
+  // Read from the current position to the end of the open file
+  void readAvailable(LineHandler handler) throws IOException {
+    while (true) {
+      readBuffer.clear();
+      int read = channel.read(readBuffer, position);
+      if (read <= 0) break;
+      position += read;
+      readBuffer.flip();
+      lineDecoder.decode(readBuffer, handler);
+    }
+  }
+
+  // Open a channel on the log file and remember its identity
+  boolean openChannel() {
+    try {
+      channel = FileChannel.open(logPath, StandardOpenOption.READ);
+      fileKey = readFileKey();
+      return true;
+    } catch (IOException e) {
+      channel = null;
+      return false;
+    }
+  }
+
+  // Return an object identifying the file currently at the log path,
+  // or null if there is no such file
+  Object readFileKey() {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(logPath, BasicFileAttributes.class);
+      return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  // Close the log file
+  void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (Exception e) {
+
+      }
+    }
+    channel = null;
+  }
+}
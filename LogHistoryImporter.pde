@@ -0,0 +1,360 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Reads old Plover logs and collects the time taken to type each word of
+// the current lesson, so that word stats start from real performance.
+// Each log is split into line-aligned chunks that are memory-mapped and
+// parsed in parallel with fork/join, and chunk results are merged in
+// log order. The time of a word is the time between its translation
+// line and the previous translation line, undone translations being
+// skipped, as long as it is shorter than maxSampleGap. The first word of
+// a chunk is timed from the last translation of the previous chunk when
+// the chunks are merged.
+public class LogHistoryImporter {
+  // Target chunk size in bytes
+  final int chunkSize = 8 * 1024 * 1024;
+
+  // Longer gaps are pauses, not typing
+  final long maxSampleGap = 5000;
+
+  // Lesson word indexes, by word
+  HashMap<String, Integer> wordIndexes = new HashMap<String, Integer>();
+
+  // Number of samples to keep for each word
+  int samplesPerWord;
+
+  // Totals of the last import
+  long importedBytes = 0;
+  long importedSamples = 0;
+
+  // Default constructor
+  LogHistoryImporter(LessonDictionary dictionary, int samplesPerWord) {
+    this.samplesPerWord = samplesPerWord;
+    for (int i = dictionary.size() - 1; i >= 0; i--) {
+      wordIndexes.put(dictionary.store.getTrimmedWord(i), i);
+    }
+  }
+
+  // Import the given logs, oldest first, and return the samples found
+  // for each word, or null if nothing could be imported
+  WordSamples importLogs(String[] logPaths) {
+    ForkJoinPool pool = new ForkJoinPool();
+    WordSamples result = null;
+    try {
+      for (String logPath : logPaths) {
+        if (logPath.trim().length() == 0) continue;
+        WordSamples logSamples = importLog(pool, Paths.get(logPath.trim()));
+        if (logSamples == null) continue;
+        if (result == null) result = logSamples;
+        else result.append(logSamples);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    if (result != null) importedSamples = result.totalSamples;
+    return result;
+  }
+
+  // Import a single log file
+  WordSamples importLog(ForkJoinPool pool, Path logPath) {
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(logPath, StandardOpenOption.READ);
+      long size = channel.size();
+      if (size == 0) return null;
+      long[] boundaries = getChunkBoundaries(channel, size);
+      PloverLogFormat format = detectFormat(channel, size);
+      WordSamples result = pool.invoke(new ChunkTask(channel, boundaries, 0, boundaries.length - 1, format));
+      importedBytes += size;
+      return result;
+    } catch (Exception e) {
+      println("Error while importing Plover log " + logPath + ": " + e.getMessage());
+      return null;
+    } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (Exception e) {
+
+        }
+      }
+    }
+  }
+
+  // Split the file into chunks that start at the beginning of a line
+  long[] getChunkBoundaries(FileChannel channel, long size) throws IOException {
+    ArrayList<Long> boundaries = new ArrayList<Long>();
+    boundaries.add(0L);
+    ByteBuffer window = ByteBuffer.allocate(4096);
+    long nominal = chunkSize;
+    while (nominal < size) {
+      long boundary = -1;
+      long offset = nominal;
+      while (boundary < 0 && offset < size) {
+        window.clear();
+        int read = channel.read(window, offset);
+        if (read <= 0) break;
+        for (int i = 0; i < read; i++) {
+          if (window.get(i) == '\n') {
+            boundary = offset + i + 1;
+            break;
+          }
+        }
+        offset += read;
+      }
+      if (boundary < 0 || boundary >= size) break;
+      boundaries.add(boundary);
+      nominal = boundary + chunkSize;
+    }
+    boundaries.add(size);
+    long[] result = new long[boundaries.size()];
+    for (int i = 0; i < result.length; i++) result[i] = boundaries.get(i);
+    return result;
+  }
+
+  // Detect the log format from its last lines
+  PloverLogFormat detectFormat(FileChannel channel, long size) throws IOException {
+    PloverLogFormatDetector detector = new PloverLogFormatDetector();
+    long start = Math.max(0, size - 64 * 1024);
+    LineDecoder decoder = new LineDecoder();
+    if (start > 0) decoder.skipLine();
+    decoder.decode(channel.map(FileChannel.MapMode.READ_ONLY, start, size - start), detector);
+    return detector.hasVotes() ? detector.getFormat() : ploverLogFormats[0];
+  }
+
+  // Parses a range of chunks, splitting it in halves until a single
+  // chunk is left
+  class ChunkTask extends RecursiveTask<WordSamples> {
+    static final long serialVersionUID = 1L;
+
+    FileChannel channel;
+    long[] boundaries;
+    int firstChunk;
+    int endChunk;
+    PloverLogFormat format;
+
+    ChunkTask(FileChannel channel, long[] boundaries, int firstChunk, int endChunk, PloverLogFormat format) {
+      this.channel = channel;
+      this.boundaries = boundaries;
+      this.firstChunk = firstChunk;
+      this.endChunk = endChunk;
+      this.format = format;
+    }
+
+    protected WordSamples compute() {
+      if (endChunk - firstChunk == 1) return parseChunk();
+      int middle = (firstChunk + endChunk) >>> 1;
+      ChunkTask left = new ChunkTask(channel, boundaries, firstChunk, middle, format);
+      ChunkTask right = new ChunkTask(channel, boundaries, middle, endChunk, format);
+      left.fork();
+      WordSamples rightSamples = right.compute();
+      WordSamples leftSamples = left.join();
+      appendChunk(leftSamples, rightSamples);
+      return leftSamples;
+    }
+
+    // Map and parse a single chunk
+    WordSamples parseChunk() {
+      ChunkParser chunkParser = new ChunkParser(format);
+      long start = boundaries[firstChunk];
+      long end = boundaries[endChunk];
+      try {
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        chunkParser.decoder.decode(chunk, chunkParser);
+      } catch (IOException e) {
+        println("Error while importing Plover log chunk: " + e.getMessage());
+      }
+      return chunkParser.samples;
+    }
+  }
+
+  // Append the samples of the next chunks of the same log, adding the
+  // sample of their first word, timed from the last translation before
+  // them
+  void appendChunk(WordSamples samples, WordSamples next) {
+    if (samples.lastTime == 0) {
+      // No translation so far, the first one is still untimed
+      samples.firstTime = next.firstTime;
+      samples.firstWordIndex = next.firstWordIndex;
+    } else if (next.firstTime > 0 && next.firstWordIndex >= 0) {
+      long gap = next.firstTime - samples.lastTime;
+      if (gap > 0 && gap <= maxSampleGap) samples.add(next.firstWordIndex, gap);
+    }
+    samples.append(next);
+    if (next.lastTime > 0) samples.lastTime = next.lastTime;
+  }
+
+  // Collects word samples from the lines of a chunk
+  class ChunkParser implements LineHandler {
+    LineDecoder decoder = new LineDecoder();
+    PloverLogParser parser;
+    Stroke stroke = new Stroke();
+    WordSamples samples = new WordSamples(samplesPerWord);
+
+    // Time of the last translation and of the one before it, 0 if unknown
+    long lastTime = 0;
+    long previousTime = 0;
+
+    ChunkParser(PloverLogFormat format) {
+      parser = format.createParser();
+    }
+
+    public void handleLine(char[] line, int length) {
+      if (!parser.parse(line, length, stroke) || stroke.time == 0) return;
+      if (stroke.isDelete) {
+        // The undone translation didn't end a word. If it was the first
+        // one of the chunk, the next one is the first.
+        if (previousTime == 0 && lastTime == samples.firstTime) samples.firstTime = 0;
+        lastTime = previousTime;
+        previousTime = 0;
+        samples.lastTime = lastTime;
+        return;
+      }
+      Integer wordIndex = wordIndexes.get(stroke.word.trim());
+      if (lastTime > 0) {
+        long gap = stroke.time - lastTime;
+        if (wordIndex != null && gap > 0 && gap <= maxSampleGap) samples.add(wordIndex, gap);
+      } else if (samples.firstTime == 0) {
+        // Timed from the previous chunk, see appendChunk()
+        samples.firstTime = stroke.time;
+        samples.firstWordIndex = wordIndex != null ? wordIndex : -1;
+      }
+      previousTime = lastTime;
+      lastTime = stroke.time;
+      samples.lastTime = lastTime;
+    }
+  }
+}
+
+// The last samples of each word, kept in per-word ring buffers. Only
+// words that have samples take space: each of them gets a slot, found
+// through an open-addressing table of word indexes, so that the
+// samples of a log chunk stay small however large the lesson is.
+public class WordSamples {
+  // Slot of each word plus one, 0 if the word has no samples, in a
+  // table indexed by word index hash
+  int[] tableWords = new int[64];
+  int[] tableSlots = new int[64];
+
+  // Word index and sample count of each slot, and its ring buffer at
+  // slot * samplesPerWord
+  int[] slotWords = new int[16];
+  int[] counts = new int[16];
+  long[] samples;
+  int slotCount = 0;
+
+  int samplesPerWord;
+  long totalSamples = 0;
+
+  // Time and word index of the first translation of the covered part of
+  // a log, which has no previous translation in that part, and time of
+  // the last translation. Times are 0 if unknown, the index -1 if the
+  // word is not in the lesson.
+  long firstTime = 0;
+  int firstWordIndex = -1;
+  long lastTime = 0;
+
+  // Default constructor
+  WordSamples(int samplesPerWord) {
+    this.samplesPerWord = samplesPerWord;
+    samples = new long[slotWords.length * samplesPerWord];
+  }
+
+  // Add a sample, replacing the oldest one if the word is full
+  void add(int wordIndex, long sample) {
+    int slot = getSlot(wordIndex);
+    if (slot < 0) slot = createSlot(wordIndex);
+    samples[slot * samplesPerWord + counts[slot] % samplesPerWord] = sample;
+    counts[slot]++;
+    totalSamples++;
+  }
+
+  // Append the samples of a later part of the logs. Samples it had
+  // already replaced are still counted in the total.
+  void append(WordSamples later) {
+    long keptSamples = 0;
+    for (int slot = 0; slot < later.slotCount; slot++) {
+      int wordIndex = later.slotWords[slot];
+      int sampleCount = later.getSampleCount(wordIndex);
+      for (int j = 0; j < sampleCount; j++) add(wordIndex, later.getSample(wordIndex, j));
+      keptSamples += sampleCount;
+    }
+    totalSamples += later.totalSamples - keptSamples;
+  }
+
+  // Number of samples kept for a word
+  int getSampleCount(int wordIndex) {
+    int slot = getSlot(wordIndex);
+    return slot < 0 ? 0 : min(counts[slot], samplesPerWord);
+  }
+
+  // Return a kept sample of a word, 0 being the oldest
+  long getSample(int wordIndex, int sampleIndex) {
+    int slot = getSlot(wordIndex);
+    int first = counts[slot] > samplesPerWord ? counts[slot] % samplesPerWord : 0;
+    return samples[slot * samplesPerWord + (first + sampleIndex) % samplesPerWord];
+  }
+
+  // Return the slot of a word, -1 if it has no samples
+  int getSlot(int wordIndex) {
+    int mask = tableWords.length - 1;
+    for (int i = hashWordIndex(wordIndex) & mask; tableWords[i] != 0; i = (i + 1) & mask) {
+      if (tableWords[i] == wordIndex + 1) return tableSlots[i];
+    }
+    return -1;
+  }
+
+  // Give a slot to a word, growing the slots and the table as needed
+  int createSlot(int wordIndex) {
+    if (slotCount == slotWords.length) {
+      slotWords = Arrays.copyOf(slotWords, slotCount * 2);
+      counts = Arrays.copyOf(counts, slotCount * 2);
+      samples = Arrays.copyOf(samples, slotCount * 2 * samplesPerWord);
+    }
+    int slot = slotCount++;
+    slotWords[slot] = wordIndex;
+    if (slotCount * 2 > tableWords.length) {
+      tableWords = new int[tableWords.length * 2];
+      tableSlots = new int[tableSlots.length * 2];
+      for (int i = 0; i < slot; i++) putSlot(slotWords[i], i);
+    }
+    putSlot(wordIndex, slot);
+    return slot;
+  }
+
+  // Store the slot of a word in the table
+  void putSlot(int wordIndex, int slot) {
+    int mask = tableWords.length - 1;
+    int i = hashWordIndex(wordIndex) & mask;
+    while (tableWords[i] != 0) i = (i + 1) & mask;
+    tableWords[i] = wordIndex + 1;
+    tableSlots[i] = slot;
+  }
+
+  // Spread word indexes over the table
+  int hashWordIndex(int wordIndex) {
+    int hash = wordIndex * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// This thread appends synthetic Plover 2.x translation lines to a log,
+// at a given rate of strokes per second with random jitter. Words and
+// outlines come from the current lesson. Multi-stroke outlines are
+// written like Plover does, each partial translation being undone by
+// the next stroke, and some words are misstroked and then undone with
+// '*'. It is used to load test log following end to end.
+public class LogLoadGenerator extends Thread {
+  String logFilePath;
+  DictionaryStore words;
+
+  // Strokes per second, maximum random shift of each stroke in
+  // milliseconds and probability of a misstroke
+  float rate;
+  int jitter;
+  float errorRate;
+
+  Random random = new Random(42);
+  SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+
+  // Strokes written, counting translations and undo lines
+  volatile long generatedStrokes = 0;
+
+  OutputStream output;
+
+  // Default constructor
+  LogLoadGenerator(String logFilePath, DictionaryStore words, float rate, int jitter, float errorRate) {
+    this.logFilePath = logFilePath;
+    this.words = words;
+    this.rate = rate;
+    this.jitter = jitter;
+    this.errorRate = errorRate;
+    setDaemon(true);
+  }
+
+  // Write words until the sketch exits
+  void run() {
+    try {
+      output = new FileOutputStream(logFilePath, true);
+      long interval = (long) (1000000000L / rate);
+      long nextStrokeTime = System.nanoTime();
+      while (!isInterrupted()) {
+        int wordIndex = random.nextInt(words.size());
+        String[] strokes = words.getStroke(wordIndex).split("/");
+
+        // Misstroke, then undo it
+        if (random.nextFloat() < errorRate) {
+          int wrongWordIndex = random.nextInt(words.size());
+          String wrongTuple = "'" + words.getStroke(wrongWordIndex).split("/")[0] + "',";
+          String wrongWord = words.getWord(wrongWordIndex);
+          nextStrokeTime = waitForStroke(nextStrokeTime, interval);
+          writeTranslation(false, wrongTuple, wrongWord);
+          nextStrokeTime = waitForStroke(nextStrokeTime, interval);
+          writeTranslation(true, wrongTuple, wrongWord);
+        }
+
+        // Partial translations of a multi-stroke outline are shown
+        // untranslated, then undone by the next stroke
+        String tuple = "";
+        String outline = "";
+        for (int i = 0; i < strokes.length; i++) {
+          nextStrokeTime = waitForStroke(nextStrokeTime, interval);
+          if (i > 0) writeTranslation(true, tuple, outline);
+          tuple += (i > 0 ? " " : "") + "'" + strokes[i] + "',";
+          outline += (i > 0 ? "/" : "") + strokes[i];
+          writeTranslation(false, tuple, i < strokes.length - 1 ? outline : words.getWord(wordIndex));
+        }
+      }
+    } catch (Exception e) {
+      println("Error while writing load test log: " + e.getMessage());
+    }
+    if (output != null) {
+      try {
+        output.close();
+      } catch (Exception e) {
+
+      }
+    }
+  }
+
+  // Sleep until the given time shifted by a random jitter, return the
+  // time of the next stroke
+  long waitForStroke(long strokeTime, long interval) {
+    long shift = jitter > 0 ? (random.nextInt(2 * jitter + 1) - jitter) * 1000000L : 0;
+    long delay = strokeTime + shift - System.nanoTime();
+    if (delay > 0) LockSupport.parkNanos(delay);
+    return strokeTime + interval;
+  }
+
+  // Append a translation line, or its undo line, to the log. Single
+  // strokes keep Plover's trailing comma inside the tuple.
+  void writeTranslation(boolean isUndo, String tuple, String translation) throws IOException {
+    if (tuple.indexOf(' ') > 0) tuple = tuple.substring(0, tuple.length() - 1);
+    String line = timestampFormat.format(new Date()) + " " + (isUndo ? "*" : "") +
+      "Translation((" + tuple + ") : " + translation + ")\n";
+    output.write(line.getBytes("UTF-8"));
+    output.flush();
+    generatedStrokes++;
+  }
+}
+
+// Measures how the sketch keeps up with a load test: strokes consumed
+// per second, lag from the time a stroke was written to the frame that
+// applied it, and strokes dropped or still missing
+public class LoadTestMonitor {
+  LogLoadGenerator generator;
+
+  // Totals since the start
+  long consumedStrokes = 0;
+
+  // Values of the current report period
+  long periodStart;
+  long periodStrokes = 0;
+  long periodLagTotal = 0;
+  long periodMaxLag = 0;
+
+  // Last report, shown on screen
+  String report = "";
+
+  // Default constructor
+  LoadTestMonitor(LogLoadGenerator generator) {
+    this.generator = generator;
+    periodStart = System.currentTimeMillis();
+  }
+
+  // Record a stroke applied by the draw cycle
+  void recordStroke(Stroke stroke, long now) {
+    consumedStrokes++;
+    periodStrokes++;
+    if (stroke.time > 0) {
+      long lag = max(0, (int) (now - stroke.time));
+      periodLagTotal += lag;
+      if (lag > periodMaxLag) periodMaxLag = lag;
+    }
+  }
+
+  // Update the report once per second and print it
+  void update(long now, long droppedStrokes, int queuedStrokes) {
+    long elapsed = now - periodStart;
+    if (elapsed < 1000) return;
+    long missingStrokes = generator.generatedStrokes - consumedStrokes - droppedStrokes - queuedStrokes;
+    report = "Load test: generated " + generator.generatedStrokes +
+      ", consumed " + (periodStrokes * 1000 / elapsed) + "/s" +
+      ", lag avg " + (periodStrokes > 0 ? periodLagTotal / periodStrokes : 0) + " ms max " + periodMaxLag + " ms" +
+      ", dropped " + droppedStrokes + ", missing " + max(0, (int) missingStrokes);
+    println(report);
+    periodStart = now;
+    periodStrokes = 0;
+    periodLagTotal = 0;
+    periodMaxLag = 0;
+  }
+}
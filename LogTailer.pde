@@ -0,0 +1,248 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+// States of the Plover log source: its folder is missing, the folder
+// exists but the log does not yet, the log is being followed, or it was
+// followed and has gone away
+final int logMissing = 0;
+final int logWaiting = 1;
+final int logAttached = 2;
+final int logDetached = 3;
+
+// This thread follows the Plover log. It sleeps until the log
+// directory reports a change to the log file, then reads only the
+// newly appended lines and queues the parsed strokes for draw().
+// Reading and parsing never happen on the animation thread.
+// Rotation and truncation of the log are handled by LogFollower.
+// If the log or its folder is missing, it looks for them again with
+// exponential backoff and attaches as soon as the log appears.
+public class LogTailer extends Thread implements LineHandler {
+  // Path to Plover log file and its folder
+  String logFilePath;
+  Path logPath;
+  Path logDirectory;
+
+  // Reads new lines from Plover log, surviving rotation and truncation
+  LogFollower logFollower;
+
+  // Format of the log, detected at startup, and its parser
+  PloverLogFormat logFormat = ploverLogFormats[0];
+  PloverLogParser parser = logFormat.createParser();
+
+  // Reusable stroke filled by the parser, then copied into the queue
+  Stroke parsedStroke = new Stroke();
+
+  // Strokes parsed but not yet consumed by the draw cycle
+  StrokeRingBuffer strokeQueue = new StrokeRingBuffer(1024);
+
+  // Current state of the log source and its one line description
+  volatile int state = -1;
+  volatile String status = "";
+
+  // Delay before looking for a missing log again, doubled after each
+  // failed attempt up to maxRetryDelay
+  final long minRetryDelay = 250;
+  final long maxRetryDelay = 8000;
+  long retryDelay = minRetryDelay;
+
+  // While attached, the log is fully checked at least every
+  // maxRetryDelay, in case it went away unreported. Where the watch
+  // service is the JDK polling implementation (e.g. on macOS), which
+  // only reports changes every few seconds, the size of the log is also
+  // checked every attachedPollDelay.
+  final long attachedPollDelay = 25;
+  long lastUpdateTime = 0;
+
+  // Whether the next attach is the first one. A log found at startup is
+  // followed from its end. Later, the same log resumes where it was left
+  // and a new one is followed from its beginning.
+  boolean isFirstAttach = true;
+  boolean wasAttached = false;
+
+  // Default constructor
+  LogTailer(String logFilePath) {
+    this.logFilePath = logFilePath;
+    logPath = Paths.get(logFilePath).toAbsolutePath();
+    logDirectory = logPath.getParent();
+    logFollower = new LogFollower(logFilePath);
+    setDaemon(true);
+  }
+
+  // Follow the log while its folder exists, otherwise wait for it
+  void run() {
+    try {
+      while (true) {
+        if (Files.isDirectory(logDirectory)) {
+          followLogDirectory();
+        } else {
+          setState(logMissing);
+          waitToRetry();
+        }
+      }
+    } catch (InterruptedException x) {
+      Thread.currentThread().interrupt();
+    }
+    logFollower.close();
+  }
+
+  // Wait for changes in the log directory and read new strokes, until
+  // the directory goes away
+  void followLogDirectory() throws InterruptedException {
+    WatchService watchService = null;
+    try {
+      Path logFileName = logPath.getFileName();
+      watchService = FileSystems.getDefault().newWatchService();
+      boolean isPollingWatchService = watchService.getClass().getName().contains("Polling");
+      logDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+      // Catch up with lines written before the watch was registered
+      update();
+
+      while (true) {
+        long pollDelay = state != logAttached ? retryDelay : isPollingWatchService ? attachedPollDelay : maxRetryDelay;
+        WatchKey watchKey = watchService.poll(pollDelay, TimeUnit.MILLISECONDS);
+        if (watchKey == null) {
+          // Nothing reported in time, check the log anyway
+          if (state != logAttached) {
+            retryDelay = Math.min(retryDelay * 2, maxRetryDelay);
+            update();
+          } else if (logFollower.hasNewData() || System.currentTimeMillis() - lastUpdateTime >= maxRetryDelay) {
+            update();
+          }
+          continue;
+        }
+        boolean isLogModified = false;
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW || logFileName.equals(event.context())) {
+            isLogModified = true;
+          }
+        }
+        if (isLogModified) update();
+        if (!watchKey.reset()) break;
+      }
+    } catch (IOException e) {
+      println("Error while watching Plover log file: " + e.getMessage());
+      waitToRetry();
+    } finally {
+      if (watchService != null) {
+        try {
+          watchService.close();
+        } catch (Exception e) {
+
+        }
+      }
+    }
+    if (state == logAttached) detach();
+  }
+
+  // Read new strokes if the log is attached, otherwise try to attach it
+  void update() {
+    lastUpdateTime = System.currentTimeMillis();
+    if (state != logAttached) {
+      attach();
+    } else {
+      readNewStrokes();
+      if (state == logAttached && logFollower.readFileKey() == null) detach();
+    }
+  }
+
+  // Open the log, detect its format and read what is already there
+  void attach() {
+    boolean isOpen = isFirstAttach ? logFollower.open() : logFollower.reopen();
+    isFirstAttach = false;
+    if (!isOpen) {
+      setState(wasAttached ? logDetached : logWaiting);
+      return;
+    }
+    detectLogFormat();
+    wasAttached = true;
+    retryDelay = minRetryDelay;
+    setState(logAttached);
+    readNewStrokes();
+  }
+
+  // Close the log after it went away or could not be read
+  void detach() {
+    logFollower.close();
+    setState(logDetached);
+  }
+
+  // Sleep before looking for the log again, and double the next delay
+  void waitToRetry() throws InterruptedException {
+    Thread.sleep(retryDelay);
+    retryDelay = Math.min(retryDelay * 2, maxRetryDelay);
+  }
+
+  // Change state and describe it, printing each change only once
+  void setState(int newState) {
+    if (newState == state) return;
+    state = newState;
+    switch (state) {
+    case logMissing:
+      status = "Plover log folder not found: " + logDirectory;
+      break;
+    case logWaiting:
+      status = "Waiting for Plover log: " + logPath;
+      break;
+    case logAttached:
+      status = "Following Plover log (" + logFormat.name + "): " + logPath;
+      break;
+    default:
+      status = "Plover log lost, waiting for it to come back: " + logPath;
+    }
+    println(status);
+  }
+
+  // Detect the log format from the end of the log and create its parser.
+  // If the log is still empty, the previous format is kept.
+  void detectLogFormat() {
+    PloverLogFormatDetector detector = new PloverLogFormatDetector();
+    try {
+      logFollower.sampleTail(64 * 1024, detector);
+    } catch (Exception e) {
+      println("Error while reading Plover log file: " + e.getMessage());
+    }
+    if (detector.hasVotes()) logFormat = detector.getFormat();
+    parser = logFormat.createParser();
+    if (debug) println("Plover log format: " + logFormat.name);
+  }
+
+  // Read all the lines appended since the last read and queue
+  // the strokes they contain
+  void readNewStrokes() {
+    try {
+      logFollower.readLines(this);
+    } catch (Exception e) {
+      println("Error while reading stroke from Plover log file: " + e.getMessage());
+      detach();
+    }
+  }
+
+  // Parse a log line and queue its stroke, if any
+  void handleLine(char[] line, int length) {
+    if (parser.parse(line, length, parsedStroke)) {
+      parsedStroke.readTime = System.currentTimeMillis();
+      strokeQueue.offer(parsedStroke);
+    }
+  }
+}
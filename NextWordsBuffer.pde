@@ -76,7 +76,7 @@ public class NextWordsBuffer {
       lastWordIndex = nextWordIndex;
 
       textFont(font, mainTextFontSize);
-      usedBufferSize += textWidth(dictionary.get(nextWordIndex).word.trim() + " ");
+      usedBufferSize += textWidth(dictionary.getTrimmedWord(nextWordIndex) + " ");
     }
 
     // Remove this word because it finishes too far
@@ -89,7 +89,7 @@ public class NextWordsBuffer {
   float getLineWidth(ArrayList<Integer> words) {
     float result = 0;
     for (Integer wordIndex : words) {
-      result += textWidth(dictionary.get(wordIndex).word.trim() + " ");
+      result += textWidth(dictionary.getTrimmedWord(wordIndex) + " ");
     }
     return result;
   }
@@ -98,7 +98,7 @@ public class NextWordsBuffer {
   float getLineWidth(ArrayList<Integer> words, int maxWordIndex) {
     float result = 0;
     for (int i = 0; i < maxWordIndex; i++) {
-      result += textWidth(dictionary.get(words.get(i)).word.trim() + " ");
+      result += textWidth(dictionary.getTrimmedWord(words.get(i)) + " ");
     }
     return result;
   }
@@ -121,7 +121,7 @@ public class NextWordsBuffer {
       nextWords.add(wordIndex);
 
       textFont(font, mainTextFontSize);
-      usedBufferSize += textWidth(dictionary.get(wordIndex).word.trim() + " ");
+      usedBufferSize += textWidth(dictionary.getTrimmedWord(wordIndex) + " ");
       lastWordIndex = wordIndex;
     }
 
@@ -135,7 +135,7 @@ public class NextWordsBuffer {
       lastWordIndex = nextWordIndex;
 
       textFont(font, mainTextFontSize);
-      usedBufferSize += textWidth(dictionary.get(nextWordIndex).word.trim() + " ");
+      usedBufferSize += textWidth(dictionary.getTrimmedWord(nextWordIndex) + " ");
 
       // If only one word is required, break the loop
       if(isSingleWordBuffer) break;
@@ -159,7 +159,7 @@ public class NextWordsBuffer {
     // isn't blacklisted, add it to the pool a number of times,
     // based on word penalty.
     for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-      if (i == previousWordIndex || wordsBlacklist.contains(dictionary.get(i).word)) continue;
+      if (i == previousWordIndex || dictionary.isBlacklisted(i)) continue;
       else {
         int penalty = (int) map(wordStats.get(i).getWordPenalty(), penaltyLimits[0], penaltyLimits[1], 1, 100);
         for (int j = 0; j < penalty; j++) wordPool.add(i);
@@ -175,7 +175,7 @@ public class NextWordsBuffer {
     long currentMinPenalty = 1000000000;
     long currentMaxPenalty = 0;
     for (int i = 0; i < min(dictionary.size(), startBaseWords + unlockedWords); i++) {
-      if (i == currentWordIndex || wordsBlacklist.contains(dictionary.get(i).word)) continue;
+      if (i == currentWordIndex || dictionary.isBlacklisted(i)) continue;
       long penalty = wordStats.get(i).getWordPenalty();
       if (currentMinPenalty > penalty) currentMinPenalty = penalty;
       if (currentMaxPenalty < penalty) currentMaxPenalty = penalty;
@@ -189,7 +189,7 @@ public class NextWordsBuffer {
     textFont(font, mainTextFontSize);
     for (int i = 0; i < nextWords.size(); i++) {
       int index = nextWords.get(i);
-      String word = dictionary.get(index).word;
+      String word = dictionary.getWord(index);
       if (i == highlightedWordIndex) {
         noFill();
         stroke(250, 200, 100);
@@ -210,7 +210,7 @@ public class NextWordsBuffer {
         fill(min(250, 25 * (nextLineWords.size() - i)));
       }
       int index = nextLineWords.get(i);
-      String word = dictionary.get(index).word;
+      String word = dictionary.getWord(index);
       text(word, currentX, y + mainTextFontSize);
       fill(isLessonPaused ? 200 : 250);
       currentX += textWidth(word + " ");
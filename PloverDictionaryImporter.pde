@@ -0,0 +1,231 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Generates a lesson from a Plover JSON dictionary and a word frequency
+// list. The frequency list has one word per line, most frequent first;
+// anything after the first space or tab of a line, such as a count, is
+// ignored. The dictionary is read with a streaming tokenizer, one entry
+// at a time, and only the shortest outline of each listed word is kept,
+// so memory depends on the frequency list, not on the dictionary.
+public class PloverDictionaryImporter {
+  // Frequency rank of each listed word
+  HashMap<String, Integer> wordRanks = new HashMap<String, Integer>();
+  ArrayList<String> rankedWords = new ArrayList<String>();
+
+  // Shortest outline found for each ranked word, null if none yet
+  String[] bestOutlines;
+
+  // Number of dictionary entries read
+  int entryCount = 0;
+
+  // Reader state: buffered chars, current line, reusable string builder
+  Reader reader;
+  char[] readBuffer = new char[64 * 1024];
+  int readLength = 0;
+  int readPosition = 0;
+  int line = 1;
+  StringBuilder token = new StringBuilder();
+
+  // Words written on each lesson line
+  final int wordsPerLine = 10;
+
+  // Import the dictionary and write the lesson text files, ordered by
+  // frequency and limited to maxWords if positive. Return the number of
+  // words written, or -1 on errors.
+  int importLesson(String dictionaryPath, String frequencyPath, String lesFilePath, String chdFilePath, int maxWords) {
+    try {
+      readFrequencyList(frequencyPath, maxWords);
+      bestOutlines = new String[rankedWords.size()];
+      reader = new InputStreamReader(new FileInputStream(dictionaryPath), "UTF-8");
+      try {
+        readDictionary();
+      } finally {
+        reader.close();
+      }
+      return writeLesson(lesFilePath, chdFilePath);
+    } catch (Exception e) {
+      println("Error while importing Plover dictionary: " + e.getMessage());
+      return -1;
+    }
+  }
+
+  // Read the ranked words, skipping duplicates and blank lines
+  void readFrequencyList(String frequencyPath, int maxWords) throws IOException {
+    BufferedReader frequencyReader = new BufferedReader(new InputStreamReader(new FileInputStream(frequencyPath), "UTF-8"));
+    try {
+      String tempLine;
+      while ((tempLine = frequencyReader.readLine()) != null) {
+        if (maxWords > 0 && rankedWords.size() == maxWords) break;
+        String word = tempLine.trim();
+        int end = 0;
+        while (end < word.length() && word.charAt(end) != ' ' && word.charAt(end) != '\t') end++;
+        word = word.substring(0, end);
+        if (word.length() == 0 || word.charAt(0) == '<' || wordRanks.containsKey(word)) continue;
+        wordRanks.put(word, rankedWords.size());
+        rankedWords.add(word);
+      }
+    } finally {
+      frequencyReader.close();
+    }
+  }
+
+  // Read the top level object of the dictionary, entry by entry
+  void readDictionary() throws IOException {
+    expect('{');
+    int c = skipWhitespace();
+    if (c == '}') return;
+    while (true) {
+      if (c != '"') throw unexpected(c);
+      String outline = readString();
+      expect(':');
+      c = skipWhitespace();
+      if (c != '"') throw unexpected(c);
+      addEntry(outline, readString());
+      c = skipWhitespace();
+      if (c == '}') return;
+      if (c != ',') throw unexpected(c);
+      c = skipWhitespace();
+    }
+  }
+
+  // Keep the outline if it is the shortest one so far for a ranked word:
+  // fewer strokes first, then fewer keys
+  void addEntry(String outline, String translation) {
+    entryCount++;
+    Integer rank = wordRanks.get(translation);
+    if (rank == null) return;
+    String best = bestOutlines[rank];
+    if (best == null || isShorter(outline, best)) bestOutlines[rank] = outline;
+  }
+
+  // Whether outline a is shorter than outline b
+  boolean isShorter(String a, String b) {
+    int aStrokes = countStrokes(a);
+    int bStrokes = countStrokes(b);
+    if (aStrokes != bStrokes) return aStrokes < bStrokes;
+    return a.length() < b.length();
+  }
+
+  // Write the words that have an outline, in frequency order
+  int writeLesson(String lesFilePath, String chdFilePath) throws IOException {
+    BufferedWriter lesWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(lesFilePath), "UTF-8"));
+    BufferedWriter chdWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(chdFilePath), "UTF-8"));
+    int writtenWords = 0;
+    try {
+      for (int i = 0; i < bestOutlines.length; i++) {
+        if (bestOutlines[i] == null || bestOutlines[i].indexOf(' ') >= 0) continue;
+        if (writtenWords > 0) {
+          String separator = writtenWords % wordsPerLine == 0 ? "\n" : " ";
+          lesWriter.write(separator);
+          chdWriter.write(separator);
+        }
+        lesWriter.write(rankedWords.get(i));
+        chdWriter.write(bestOutlines[i]);
+        writtenWords++;
+      }
+      lesWriter.write("\n");
+      chdWriter.write("\n");
+    } finally {
+      lesWriter.close();
+      chdWriter.close();
+    }
+    return writtenWords;
+  }
+
+  // Read a JSON string whose opening quote has just been read
+  String readString() throws IOException {
+    token.setLength(0);
+    while (true) {
+      int c = nextChar();
+      if (c == '"') return token.toString();
+      if (c < 0 || c == '\n') throw unexpected(c);
+      if (c == '\\') {
+        c = nextChar();
+        switch (c) {
+        case 'b':
+          token.append('\b');
+          break;
+        case 'f':
+          token.append('\f');
+          break;
+        case 'n':
+          token.append('\n');
+          break;
+        case 'r':
+          token.append('\r');
+          break;
+        case 't':
+          token.append('\t');
+          break;
+        case 'u':
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(nextChar(), 16);
+            if (digit < 0) throw new IOException("invalid escape at line " + line);
+            code = code * 16 + digit;
+          }
+          token.append((char) code);
+          break;
+        case '"':
+        case '\\':
+        case '/':
+          token.append((char) c);
+          break;
+        default:
+          throw unexpected(c);
+        }
+      } else {
+        token.append((char) c);
+      }
+    }
+  }
+
+  // Read the given char, after any whitespace
+  void expect(char expected) throws IOException {
+    int c = skipWhitespace();
+    if (c != expected) throw unexpected(c);
+  }
+
+  // Return the next char that is not whitespace, -1 at the end
+  int skipWhitespace() throws IOException {
+    int c = nextChar();
+    while (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\uFEFF') c = nextChar();
+    return c;
+  }
+
+  // Return the next char, -1 at the end
+  int nextChar() throws IOException {
+    if (readPosition == readLength) {
+      readLength = reader.read(readBuffer, 0, readBuffer.length);
+      readPosition = 0;
+      if (readLength <= 0) {
+        readLength = 0;
+        return -1;
+      }
+    }
+    char c = readBuffer[readPosition++];
+    if (c == '\n') line++;
+    return c;
+  }
+
+  // Error for an unexpected char or end of file
+  IOException unexpected(int c) {
+    return new IOException((c < 0 ? "unexpected end of file" : "unexpected '" + (char) c + "'") + " at line " + line);
+  }
+}
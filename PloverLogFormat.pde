@@ -0,0 +1,76 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// A Plover log format, able to create the parser for its lines
+public class PloverLogFormat {
+  String name;
+  boolean isQuotedTranslation;
+
+  // Default constructor
+  PloverLogFormat(String name, boolean isQuotedTranslation) {
+    this.name = name;
+    this.isQuotedTranslation = isQuotedTranslation;
+  }
+
+  // Create a parser for this format
+  PloverLogParser createParser() {
+    return new PloverLogParser(isQuotedTranslation);
+  }
+}
+
+// Known Plover log formats, the first one is the default
+final PloverLogFormat[] ploverLogFormats = {
+  new PloverLogFormat("Plover 2.x/3.x", false),
+  new PloverLogFormat("Plover 4.x", true)
+};
+
+// Picks the format of a Plover log from a sample of its lines. Each
+// translation line votes for the quoted or the unquoted format, and
+// the format with most votes wins. This only runs once at startup, so
+// that each line of the session is read by a single parser.
+public class PloverLogFormatDetector implements LineHandler {
+  // Parser of unquoted translations, where quotes remain in the word
+  PloverLogParser probe = new PloverLogParser(false);
+  Stroke probeStroke = new Stroke();
+
+  // Votes for each format
+  int unquotedVotes = 0;
+  int quotedVotes = 0;
+
+  // Vote with a sampled line
+  void handleLine(char[] line, int length) {
+    if (!probe.parse(line, length, probeStroke)) return;
+    String word = probeStroke.word.trim();
+    if (word.length() >= 2 && probe.isQuote(word.charAt(0)) && word.charAt(word.length() - 1) == word.charAt(0)) {
+      quotedVotes++;
+    } else if (!word.equals("None")) {
+      unquotedVotes++;
+    }
+  }
+
+  // Whether any translation line has been sampled
+  boolean hasVotes() {
+    return unquotedVotes + quotedVotes > 0;
+  }
+
+  // Return the detected format
+  PloverLogFormat getFormat() {
+    return quotedVotes > unquotedVotes ? ploverLogFormats[1] : ploverLogFormats[0];
+  }
+}
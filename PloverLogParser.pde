@@ -0,0 +1,213 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.util.Calendar;
+
+// Parses Plover log translation lines, such as
+//   2013-07-08 19:02:55,123 Translation(('KAT', 'TKOG') : catdog)
+// or the undo line of a translation, which has '*' before Translation.
+// Plover 4 quotes the translation, as in Translation(('KAT',) : 'cat'),
+// and writes None for untranslated strokes: such parsers are created
+// with isQuotedTranslation set, see PloverLogFormat.
+// Each line is scanned once and written into a caller-provided Stroke,
+// together with the time stamp Plover wrote at the start of the line.
+// Stroke and word strings come from a StringCache, so repeated strokes,
+// the usual case while drilling a lesson, allocate nothing.
+public class PloverLogParser {
+  final char[] translationMarker = "Translation((".toCharArray();
+
+  // Whether translations are quoted
+  boolean isQuotedTranslation;
+
+  // Reusable buffer where multiple strokes are joined with '/'
+  char[] strokeChars = new char[64];
+  int strokeLength;
+
+  // Reusable buffer for translations with escaped chars
+  char[] wordChars = new char[64];
+
+  // Interned stroke and word strings
+  StringCache stringCache = new StringCache(1024);
+
+  // Converts log time stamps to milliseconds since the epoch
+  LogTimestampParser timestampParser = new LogTimestampParser();
+
+  // Default constructor
+  PloverLogParser(boolean isQuotedTranslation) {
+    this.isQuotedTranslation = isQuotedTranslation;
+  }
+
+  // Fill target with the stroke on the given line. Return false, leaving
+  // target unchanged, if the line is not a valid translation line.
+  boolean parse(char[] line, int length, Stroke target) {
+    int markerIndex = indexOfMarker(line, length);
+    if (markerIndex < 0) return false;
+
+    // Read the stroke tuple up to its closing parenthesis
+    strokeLength = 0;
+    int i = markerIndex + translationMarker.length;
+    while (i < length && line[i] != ')') {
+      char quote = line[i];
+      if (quote == '\'' || quote == '"') {
+        int end = i + 1;
+        while (end < length && line[end] != quote) end++;
+        if (end == length) return false;
+        if (strokeLength > 0) appendStrokeChar('/');
+        for (int j = i + 1; j < end; j++) appendStrokeChar(line[j]);
+        i = end + 1;
+      } else {
+        i++;
+      }
+    }
+
+    // The tuple is followed by " : " and the word, then by the closing
+    // parenthesis. The word keeps its leading space, like Plover output.
+    if (i + 3 >= length || line[i + 1] != ' ' || line[i + 2] != ':' || line[i + 3] != ' ') return false;
+    int wordStart = i + 3;
+    int wordEnd = length - 1;
+    if (wordEnd < wordStart || line[wordEnd] != ')' || strokeLength == 0) return false;
+
+    target.isDelete = markerIndex > 0 && line[markerIndex - 1] == '*';
+    target.time = timestampParser.parse(line, markerIndex);
+    target.stroke = stringCache.get(strokeChars, 0, strokeLength);
+    if (!isQuotedTranslation) {
+      target.word = stringCache.get(line, wordStart, wordEnd - wordStart);
+    } else if (wordEnd - wordStart >= 3 && isQuote(line[wordStart + 1]) && line[wordEnd - 1] == line[wordStart + 1]) {
+      target.word = unquote(line, wordStart + 2, wordEnd - 1);
+    } else {
+      // Untranslated, Plover types the stroke itself
+      target.word = target.stroke;
+    }
+    return true;
+  }
+
+  // Whether the char can open a quoted translation
+  boolean isQuote(char c) {
+    return c == '\'' || c == '"';
+  }
+
+  // Return the quoted translation between start and end, resolving
+  // backslash escapes
+  String unquote(char[] line, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      char c = line[i];
+      if (c == '\\' && i + 1 < end) c = line[++i];
+      if (length == wordChars.length) wordChars = Arrays.copyOf(wordChars, length * 2);
+      wordChars[length++] = c;
+    }
+    return stringCache.get(wordChars, 0, length);
+  }
+
+  // Return the index of the translation marker in the line, or -1
+  int indexOfMarker(char[] line, int length) {
+    int last = length - translationMarker.length;
+    for (int i = 0; i <= last; i++) {
+      if (line[i] != 'T') continue;
+      int j = 1;
+      while (j < translationMarker.length && line[i + j] == translationMarker[j]) j++;
+      if (j == translationMarker.length) return i;
+    }
+    return -1;
+  }
+
+  // Append a char to the stroke buffer, growing it if needed
+  void appendStrokeChar(char c) {
+    if (strokeLength == strokeChars.length) strokeChars = Arrays.copyOf(strokeChars, strokeLength * 2);
+    strokeChars[strokeLength++] = c;
+  }
+}
+
+// Parses the "yyyy-MM-dd HH:mm:ss,SSS" local time stamp at the start of
+// Plover log lines. The start of the current hour is cached, so only
+// a change of hour goes through Calendar; this also keeps daylight
+// saving changes right.
+public class LogTimestampParser {
+  Calendar calendar = Calendar.getInstance();
+
+  // Cached hour, as yyyyMMddHH, and its start in milliseconds
+  long cachedHour = -1;
+  long cachedHourStart;
+
+  // Return the time stamp at the start of the line in milliseconds since
+  // the epoch, or 0 if the line doesn't start with a time stamp. Only the
+  // first length chars are looked at.
+  long parse(char[] line, int length) {
+    if (length < 23 || line[4] != '-' || line[7] != '-' || line[10] != ' ' ||
+        line[13] != ':' || line[16] != ':' || (line[19] != ',' && line[19] != '.')) return 0;
+    int year = digits(line, 0, 4);
+    int month = digits(line, 5, 2);
+    int day = digits(line, 8, 2);
+    int hour = digits(line, 11, 2);
+    int minute = digits(line, 14, 2);
+    int second = digits(line, 17, 2);
+    int millis = digits(line, 20, 3);
+    if (year < 0 || month < 1 || day < 1 || hour < 0 || minute < 0 || second < 0 || millis < 0) return 0;
+
+    long hourKey = ((year * 100L + month) * 100L + day) * 100L + hour;
+    if (hourKey != cachedHour) {
+      calendar.clear();
+      calendar.set(year, month - 1, day, hour, 0, 0);
+      cachedHourStart = calendar.getTimeInMillis();
+      cachedHour = hourKey;
+    }
+    return cachedHourStart + minute * 60000L + second * 1000L + millis;
+  }
+
+  // Read count decimal digits, return -1 if any of them is not a digit
+  int digits(char[] line, int start, int count) {
+    int result = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = line[i];
+      if (c < '0' || c > '9') return -1;
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+}
+
+// Fixed-size table of strings looked up by their characters. A miss
+// creates the string and replaces whatever was in its slot, so memory
+// stays bounded and a hit costs one hash and one comparison.
+public class StringCache {
+  String[] table;
+  int mask;
+
+  // Default constructor, size must be a power of two
+  StringCache(int size) {
+    table = new String[size];
+    mask = size - 1;
+  }
+
+  // Return a string with the given characters
+  String get(char[] chars, int start, int length) {
+    int hash = 0;
+    for (int i = start; i < start + length; i++) hash = 31 * hash + chars[i];
+    int index = (hash ^ (hash >>> 16)) & mask;
+    String cached = table[index];
+    if (cached != null && cached.length() == length) {
+      int i = 0;
+      while (i < length && cached.charAt(i) == chars[start + i]) i++;
+      if (i == length) return cached;
+    }
+    String result = new String(chars, start, length);
+    table[index] = result;
+    return result;
+  }
+}
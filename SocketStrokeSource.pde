@@ -0,0 +1,154 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// This thread accepts strokes pushed over a local TCP socket, as an
+// alternative to reading Plover log. Clients, such as a Plover plugin
+// or a load generator, send one UTF-8 line per stroke:
+//   T <time> <stroke> <translation>
+//   U <time> <stroke> <translation>
+// T is a translation and U is its undo, like '*Translation' in Plover
+// log. time is in milliseconds since the epoch, 0 meaning the time the
+// line is received. Multiple strokes are joined with '/'. Only the
+// loopback address is bound, and all clients are served by this thread
+// with non-blocking reads, so its queue keeps a single producer.
+public class SocketStrokeSource extends Thread implements LineHandler {
+  // Local port to listen on
+  int port;
+
+  // Strokes received but not yet consumed by the draw cycle
+  StrokeRingBuffer strokeQueue = new StrokeRingBuffer(1024);
+
+  // Reusable read buffer, stroke and interned strings
+  ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+  Stroke receivedStroke = new Stroke();
+  StringCache stringCache = new StringCache(1024);
+
+  // Number of lines that could not be parsed
+  volatile long invalidLines = 0;
+
+  // Default constructor
+  SocketStrokeSource(int port) {
+    this.port = port;
+    setDaemon(true);
+  }
+
+  // Accept clients and read their lines until the sketch exits
+  void run() {
+    Selector selector = null;
+    ServerSocketChannel serverChannel = null;
+    try {
+      selector = Selector.open();
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+      while (!isInterrupted()) {
+        selector.select();
+        for (SelectionKey selectionKey : selector.selectedKeys()) {
+          if (!selectionKey.isValid()) continue;
+          if (selectionKey.isAcceptable()) {
+            SocketChannel clientChannel = serverChannel.accept();
+            if (clientChannel == null) continue;
+            clientChannel.configureBlocking(false);
+            clientChannel.register(selector, SelectionKey.OP_READ, new LineDecoder());
+          } else if (selectionKey.isReadable()) {
+            readClient(selectionKey);
+          }
+        }
+        selector.selectedKeys().clear();
+      }
+    } catch (Exception e) {
+      println("Error while receiving strokes on port " + port + ": " + e.getMessage());
+    }
+    if (selector != null) {
+      for (SelectionKey selectionKey : selector.keys()) closeQuietly(selectionKey.channel());
+      closeQuietly(selector);
+    }
+    closeQuietly(serverChannel);
+  }
+
+  // Read what a client has sent, close its connection at end of stream
+  void readClient(SelectionKey selectionKey) {
+    SocketChannel clientChannel = (SocketChannel) selectionKey.channel();
+    LineDecoder lineDecoder = (LineDecoder) selectionKey.attachment();
+    try {
+      int read;
+      while ((read = clientChannel.read(readBuffer)) > 0) {
+        readBuffer.flip();
+        lineDecoder.decode(readBuffer, this);
+        readBuffer.clear();
+      }
+      if (read < 0) {
+        selectionKey.cancel();
+        closeQuietly(clientChannel);
+      }
+    } catch (IOException e) {
+      selectionKey.cancel();
+      closeQuietly(clientChannel);
+    }
+  }
+
+  // Parse a received line and queue its stroke
+  void handleLine(char[] line, int length) {
+    if (parse(line, length, receivedStroke)) {
+      receivedStroke.readTime = System.currentTimeMillis();
+      strokeQueue.offer(receivedStroke);
+    } else if (length > 0) {
+      invalidLines++;
+    }
+  }
+
+  // Fill target with the stroke on the given line, return false if the
+  // line is not valid
+  boolean parse(char[] line, int length, Stroke target) {
+    if (length < 5 || (line[0] != 'T' && line[0] != 'U') || line[1] != ' ') return false;
+    int i = 2;
+    long time = 0;
+    while (i < length && line[i] >= '0' && line[i] <= '9') time = time * 10 + (line[i++] - '0');
+    if (i == 2 || i == length || line[i] != ' ') return false;
+    int strokeStart = ++i;
+    while (i < length && line[i] != ' ') i++;
+    if (i == strokeStart) return false;
+
+    target.isDelete = line[0] == 'U';
+    target.time = time > 0 ? time : System.currentTimeMillis();
+    target.stroke = stringCache.get(line, strokeStart, i - strokeStart);
+    // Keep the separator as leading space of the word, like Plover log
+    target.word = stringCache.get(line, i, length - i);
+    return true;
+  }
+
+  // Close a channel or selector, ignoring errors
+  void closeQuietly(Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    } catch (Exception e) {
+
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Steno keys in steno order. Indexes in this string identify keys:
+// 0 is the number key, 1-7 the left consonants, 8-12 the vowels and
+// the asterisk, 13-22 the right consonants.
+final String stenoOrder = "#STKPWHRAO*EUFRPBLGTSDZ";
+final int firstVowelKey = 8;
+final int firstRightKey = 13;
+
+// Steno key index of each digit, written with the number key: 1-4 are
+// the left S, T, P, H, 5 and 0 the vowels A and O, 6-9 the right F, P,
+// L, T
+final int[] digitKeys = {9, 1, 2, 4, 6, 8, 13, 15, 17, 19};
+
+// The set of keys of a single chord. It is written the same way as in
+// lesson .chd files, e.g. "PW-PB" or "PHR*FPLT", with a hyphen between
+// left and right consonants when there is no vowel or asterisk. As in
+// Plover, the keys of digits pressed with the number key are written
+// as those digits without the number key, e.g. "1-9" for "#S-T".
+public class StenoChord {
+  boolean[] keys = new boolean[stenoOrder.length()];
+  int pressedKeys = 0;
+
+  // Digit written for each key with the number key, 0 if none
+  char[] keyDigits = new char[stenoOrder.length()];
+
+  // Reusable buffer for the written form and interned results
+  char[] chars = new char[stenoOrder.length() + 1];
+  StringCache stringCache = new StringCache(256);
+
+  // Default constructor
+  StenoChord() {
+    for (int digit = 0; digit < digitKeys.length; digit++) keyDigits[digitKeys[digit]] = (char) ('0' + digit);
+  }
+
+  // Add a key to the chord, negative indexes are ignored
+  void press(int key) {
+    if (key < 0 || keys[key]) return;
+    keys[key] = true;
+    pressedKeys++;
+  }
+
+  // Whether no key is in the chord
+  boolean isEmpty() {
+    return pressedKeys == 0;
+  }
+
+  // Remove all keys
+  void clear() {
+    Arrays.fill(keys, false);
+    pressedKeys = 0;
+  }
+
+  // Return the chord in .chd notation
+  String format() {
+    int length = 0;
+    boolean hasMiddle = false;
+    boolean hasRight = false;
+    boolean hasDigits = false;
+    for (int i = 1; i < keys.length && keys[0]; i++) {
+      if (keys[i] && keyDigits[i] != 0) hasDigits = true;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (!keys[i] || (i == 0 && hasDigits)) continue;
+      if (i >= firstVowelKey && i < firstRightKey) hasMiddle = true;
+      if (i >= firstRightKey) {
+        if (!hasMiddle && !hasRight) chars[length++] = '-';
+        hasRight = true;
+      }
+      chars[length++] = hasDigits && keyDigits[i] != 0 ? keyDigits[i] : stenoOrder.charAt(i);
+    }
+    return stringCache.get(chars, 0, length);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// This thread reads the raw output of a steno machine from a path and
+// queues its strokes. The path can be a serial device already set up
+// for the machine, a pseudo terminal or a file with a recorded capture,
+// which is read once. Strokes have no translation: they are marked as
+// raw, so that they are translated with the outline of the current word
+// like captured chords, and a lone asterisk is reported as a delete.
+public class StenoMachineSource extends Thread {
+  // Path to read from and protocol of the machine
+  String path;
+  StenoProtocolDecoder decoder;
+
+  // Strokes decoded but not yet consumed by the draw cycle
+  StrokeRingBuffer strokeQueue = new StrokeRingBuffer(1024);
+
+  // Reusable read buffer and stroke
+  ByteBuffer readBuffer = ByteBuffer.allocateDirect(4 * 1024);
+  Stroke decodedStroke = new Stroke();
+
+  // A TX Bolt stroke without end marker is complete when no byte has
+  // arrived for this long, like Plover's serial read timeout. At 9600
+  // baud a whole stroke takes about 4 ms.
+  final long txBoltStrokeTimeout = 20;
+
+  // Default constructor
+  StenoMachineSource(String path, int protocol) {
+    this.path = path;
+    decoder = new StenoProtocolDecoder(protocol);
+    setDaemon(true);
+  }
+
+  // Read and decode until end of stream
+  void run() {
+    FileInputStream input = null;
+    try {
+      input = new FileInputStream(path);
+      FileChannel channel = input.getChannel();
+      while (!isInterrupted()) {
+        // A stroke may span several reads, so a pending TX Bolt stroke
+        // only ends once the machine stops sending
+        if (decoder.hasPending() && !waitForInput(input, txBoltStrokeTimeout)) {
+          if (decoder.finishPending()) queueChord();
+          continue;
+        }
+        int read = channel.read(readBuffer);
+        if (read < 0) break;
+        readBuffer.flip();
+        while (decoder.decodeNext(readBuffer)) queueChord();
+        readBuffer.compact();
+      }
+      if (decoder.finishPending()) queueChord();
+    } catch (Exception e) {
+      println("Error while reading steno machine " + path + ": " + e.getMessage());
+    }
+    if (input != null) {
+      try {
+        input.close();
+      } catch (Exception e) {
+
+      }
+    }
+  }
+
+  // Wait up to the given time for bytes to read, return false if none
+  // arrived. Serial devices report the bytes already received.
+  boolean waitForInput(FileInputStream input, long timeout) throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (input.available() == 0) {
+      if (System.currentTimeMillis() >= deadline) return false;
+      Thread.sleep(1);
+    }
+    return true;
+  }
+
+  // Queue the chord just decoded as a stroke
+  void queueChord() {
+    decodedStroke.stroke = decoder.chord.format();
+    decodedStroke.word = "";
+    decodedStroke.isDelete = decodedStroke.stroke.equals("*");
+    decodedStroke.isRaw = true;
+    decodedStroke.time = System.currentTimeMillis();
+    decodedStroke.readTime = decodedStroke.time;
+    strokeQueue.offer(decodedStroke);
+  }
+}
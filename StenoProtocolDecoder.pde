@@ -0,0 +1,149 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Supported steno machine protocols
+final int geminiPrProtocol = 0;
+final int txBoltProtocol = 1;
+
+// Decodes the byte stream of a steno machine into chords.
+//
+// Gemini PR sends one 6-byte packet per stroke. The first byte has its
+// high bit set, and the 7 low bits of each byte are 42 keys, from the
+// highest bit of the first byte on.
+//
+// TX Bolt sends up to 4 bytes per stroke, one per key set that has
+// pressed keys. The 2 high bits of a byte are its set, the 6 low bits
+// its keys. A stroke ends when a byte has a set that is not higher than
+// the previous one, when a byte is zero, or after the last set.
+public class StenoProtocolDecoder {
+  // Steno key index of each Gemini PR key, -1 for Fn, power and reserved keys
+  final int[] geminiPrKeys = {
+    -1, 0, 0, 0, 0, 0, 0,
+    1, 1, 2, 3, 4, 5, 6,
+    7, 8, 9, 10, 10, -1, -1,
+    -1, 10, 10, 11, 12, 13, 14,
+    15, 16, 17, 18, 19, 20, 21,
+    0, 0, 0, 0, 0, 0, 22
+  };
+
+  // Steno key index of each TX Bolt key, by set and bit
+  final int[] txBoltKeys = {
+    1, 2, 3, 4, 5, 6,
+    7, 8, 9, 10, 11, 12,
+    13, 14, 15, 16, 17, 18,
+    19, 20, 21, 22, 0, -1
+  };
+
+  int protocol;
+
+  // Chord being decoded, complete when decodeNext() returns true
+  StenoChord chord = new StenoChord();
+  boolean isChordComplete = false;
+
+  // Gemini PR packet being received
+  byte[] packet = new byte[6];
+  int packetLength = 0;
+
+  // Last TX Bolt key set received in the current stroke
+  int lastKeySet = -1;
+
+  // Default constructor
+  StenoProtocolDecoder(int protocol) {
+    this.protocol = protocol;
+  }
+
+  // Decode bytes until a chord is complete, return true if it is. The
+  // chord stays valid until the next call, and the remaining bytes are
+  // left in the buffer.
+  boolean decodeNext(ByteBuffer bytes) {
+    if (isChordComplete) {
+      chord.clear();
+      isChordComplete = false;
+    }
+    while (bytes.hasRemaining()) {
+      boolean isComplete = protocol == geminiPrProtocol ? decodeGeminiPr(bytes) : decodeTxBolt(bytes);
+      if (isComplete) {
+        isChordComplete = true;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Whether a TX Bolt stroke has been started but not completed
+  boolean hasPending() {
+    return protocol == txBoltProtocol && !isChordComplete && !chord.isEmpty();
+  }
+
+  // Complete a TX Bolt stroke whose end marker has not arrived, as when
+  // the machine has stopped sending. Return true if there was one.
+  boolean finishPending() {
+    if (isChordComplete) {
+      chord.clear();
+      isChordComplete = false;
+    }
+    if (protocol != txBoltProtocol || chord.isEmpty()) return false;
+    lastKeySet = -1;
+    isChordComplete = true;
+    return true;
+  }
+
+  // Read one Gemini PR byte, return true when a packet is complete
+  boolean decodeGeminiPr(ByteBuffer bytes) {
+    byte b = bytes.get();
+    if ((b & 0x80) != 0) {
+      packetLength = 0;
+    } else if (packetLength == 0) {
+      // Not inside a packet, wait for the next first byte
+      return false;
+    }
+    packet[packetLength++] = b;
+    if (packetLength < packet.length) return false;
+    packetLength = 0;
+    for (int i = 0; i < packet.length; i++) {
+      for (int j = 1; j < 8; j++) {
+        if ((packet[i] & (0x80 >> j)) != 0) chord.press(geminiPrKeys[i * 7 + j - 1]);
+      }
+    }
+    return !chord.isEmpty();
+  }
+
+  // Read one TX Bolt byte, return true when a stroke is complete
+  boolean decodeTxBolt(ByteBuffer bytes) {
+    int b = bytes.get(bytes.position()) & 0xff;
+    int keySet = b >> 6;
+    if (b == 0 || (keySet <= lastKeySet && !chord.isEmpty())) {
+      // This byte ends the current stroke. A zero byte is consumed, any
+      // other byte starts the next stroke and is read at the next call.
+      if (b == 0) bytes.get();
+      lastKeySet = -1;
+      return !chord.isEmpty();
+    }
+    bytes.get();
+    lastKeySet = keySet;
+    for (int i = 0; i < 6; i++) {
+      if ((b & (1 << i)) != 0) chord.press(txBoltKeys[keySet * 6 + i]);
+    }
+    if (keySet == 3) {
+      lastKeySet = -1;
+      return !chord.isEmpty();
+    }
+    return false;
+  }
+}
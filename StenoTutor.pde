@@ -28,6 +28,8 @@ int incrementWords;
 int minLevelUpWordWpm;
 int minLevelUpTotalWpm;
 int wordAvgSamples;
+float accuracyPenaltyWeight;
+float reactionPenaltyWeight;
 int wordStartAvgWpm;
 boolean isSingleWordBuffer;
 boolean isSoundEnabled;
@@ -37,12 +39,52 @@ boolean isWordDictationEnabled;
 boolean showKeyboard;
 boolean showKeyboardQwerty;
 boolean showKeyboardChord;
+int strokeSocketPort;
+String stenoMachinePath;
+String stenoMachineProtocol;
+boolean isChordCaptureEnabled;
+String historyLogPaths;
+float loadTestRate;
+int loadTestJitter;
+float loadTestErrorRate;
+String loadTestLogPath;
+String latencyDumpPath;
+String importDictionaryPath;
+String importFrequencyPath;
+String importLessonName;
+int importMaxWords;
 
 // Contains various helper methods
 Utils utils = new Utils();
 
-// Used to read Plover log
-BufferedReader logReader = null;
+// Follows Plover log and parses new strokes as they are written
+LogTailer logTailer;
+
+// Receives strokes pushed over a local socket, if enabled
+SocketStrokeSource socketStrokeSource;
+
+// Reads strokes straight from a steno machine, if enabled
+StenoMachineSource stenoMachineSource;
+
+// Captures chords from the QWERTY keyboard when Plover is not used
+ChordCapture chordCapture;
+
+// Stroke of the last captured chord and strokes typed for the current word
+Stroke capturedStroke = new Stroke();
+String chordInput = "";
+
+// Load test log writer and its monitor, if a load test is running
+LogLoadGenerator logLoadGenerator;
+LoadTestMonitor loadTestMonitor;
+
+// Creates the words of the next level in the background
+LessonPrefetcher lessonPrefetcher;
+
+// Stroke latency from Plover log to screen
+LatencyMonitor latencyMonitor;
+
+// Queues of all the stroke sources, drained at each frame
+ArrayList<StrokeRingBuffer> strokeQueues = new ArrayList<StrokeRingBuffer>();
 
 // Font definition, size is modified later
 final PFont font = createFont("Arial",30,true);
@@ -62,8 +104,12 @@ String blkDictionaryFilePath;
 // On-screen keyboard
 Keyboard keyboard;
 
-// Input buffer
-String buffer = "";
+// Input buffer, matched against the current word as it is typed
+InputBuffer buffer = new InputBuffer();
+
+// Timeline of the current attempt and a copy of the last completed one
+WordTimeline wordTimeline = new WordTimeline();
+WordTimeline lastWordTimeline = new WordTimeline();
 
 // Target line buffer
 NextWordsBuffer nextWordsBuffer;
@@ -72,10 +118,16 @@ NextWordsBuffer nextWordsBuffer;
 TTS tts;
 
 // Dictionary of current lesson
-ArrayList<Word> dictionary;
+LessonDictionary dictionary;
+
+// Reverse index of the lesson outlines, used to tell what was written
+StrokeIndex strokeIndex;
+
+// Hint about the last outline written, empty if it was correct
+String outlineHint = "";
 
 // Stats of current lesson for each word
-ArrayList<WordStats> wordStats = new ArrayList<WordStats>();
+WordStatsList wordStats;
 
 /*
  * Blacklisted words, useful if you just started learning without a NKRO keyboard or a
@@ -110,6 +162,14 @@ long lessonStartTime;
 // Store last typed word time for smart training purposes
 long lastTypedWordTime;
 
+// Word whose completion time may still be corrected by its stroke time
+// stamp, with the index of its time sample and the times the sample was
+// measured from and to. -1 if there is none.
+int pendingTimingWordIndex = -1;
+int pendingTimingSample;
+long pendingTimingStart;
+long pendingTimingEnd;
+
 // Store lesson pause start time for proper resuming
 long lastPauseTime;
 
@@ -123,6 +183,15 @@ String worstWord = "";
 // Stores the previous stroke, needed when redrawing text info
 Stroke previousStroke = new Stroke();
 
+// Undo of a translation, held back until it is known whether it only
+// continues a multi-stroke outline
+Stroke pendingUndo = new Stroke();
+boolean hasPendingUndo = false;
+
+// Strokes drained from all sources in the current frame, preallocated
+Stroke[] strokeBatch;
+int strokeBatchSize = 0;
+
 // Whether CONTROL key has been pressed and released, used to blacklist the current word
 boolean ctrlKeyReleased = false;
 
@@ -170,6 +239,8 @@ int worstWordX = baseX + 270;
 int worstWordY = baseY + 200;
 int keyboardX = baseX - 10;
 int keyboardY = baseY + 230;
+int logStatusX = 10;
+int logStatusY = 14;
 
 // Session setup
 void setup() {
@@ -179,31 +250,79 @@ void setup() {
   // Find Plover log path
   findPloverLog();
 
-  // Go to the end of Plover log file
-  logReader = utils.readEndOfFile(logFilePath);
+  // In load test mode, follow the load test log instead
+  if (loadTestRate > 0) {
+    prepareLoadTest();
+  }
+
+  // Start following Plover log from its end
+  logTailer = new LogTailer(logFilePath);
+  logTailer.start();
+  strokeQueues.add(logTailer.strokeQueue);
+
+  // Start receiving strokes from local socket, if enabled
+  if (strokeSocketPort > 0) {
+    socketStrokeSource = new SocketStrokeSource(strokeSocketPort);
+    socketStrokeSource.start();
+    strokeQueues.add(socketStrokeSource.strokeQueue);
+  }
+
+  // Start reading strokes from a steno machine, if enabled
+  if (!stenoMachinePath.equals("")) {
+    int protocol = stenoMachineProtocol.equalsIgnoreCase("txbolt") ? txBoltProtocol : geminiPrProtocol;
+    stenoMachineSource = new StenoMachineSource(stenoMachinePath, protocol);
+    stenoMachineSource.start();
+    strokeQueues.add(stenoMachineSource.strokeQueue);
+  }
+  initStrokeBatch();
+
+  // Measure stroke latency, and dump it on exit if requested or debugging
+  if (latencyDumpPath.equals("") && debug) latencyDumpPath = sketchPath + "/data/latency.txt";
+  latencyMonitor = new LatencyMonitor(latencyDumpPath);
+  registerMethod("dispose", latencyMonitor);
+
+  // Generate the lesson from a Plover dictionary, if configured
+  if (!importDictionaryPath.equals("")) {
+    importPloverDictionary();
+  }
 
   // Prepare file paths and read lesson dictionary and blacklist
   lesDictionaryFilePath = sketchPath + "/data/lessons/" + lessonName + ".les";
   chdDictionaryFilePath = sketchPath + "/data/lessons/" + lessonName + ".chd";
   blkDictionaryFilePath = sketchPath + "/data/lessons/" + lessonName + ".blk";
-  dictionary = utils.readDictionary(lesDictionaryFilePath, chdDictionaryFilePath, debug);
   wordsBlacklist = utils.readBlacklist(blkDictionaryFilePath);
+  dictionary = utils.readDictionary(lesDictionaryFilePath, chdDictionaryFilePath, blkDictionaryFilePath, wordsBlacklist, debug);
+  strokeIndex = new StrokeIndex(dictionary);
+
+  // Start writing the load test log
+  if (loadTestRate > 0) {
+    startLoadTest();
+  }
 
   // Make sure startBaseWords is adjusted based on blacklist
   applyStartBlacklist();
 
   // Initialize word stats
-  for (int i = 0; i < dictionary.size(); i++) {
-    wordStats.add(new WordStats(wordStartAvgWpm, wordAvgSamples));
+  wordStats = new WordStatsList(dictionary.size(), wordStartAvgWpm, wordAvgSamples);
+
+  // Seed word stats from old Plover logs, if any
+  if (!historyLogPaths.equals("")) {
+    importLogHistory();
   }
 
   // Initialize target line buffer and set next word index
   nextWordsBuffer = new NextWordsBuffer(frameSizeX - nextWordX);
   currentWordIndex = nextWordsBuffer.getCurrentWordIndex();
+  buffer.setTarget(dictionary.getWord(currentWordIndex));
 
   // Initialize on-screen keyboard
   keyboard = new Keyboard(keyboardX, keyboardY, showKeyboardQwerty);
 
+  // Initialize chord capture, if enabled
+  if (isChordCaptureEnabled) {
+    chordCapture = new ChordCapture(keyboard);
+  }
+
   // Configure display size
   size(frameSizeX, frameSizeY);
 
@@ -236,17 +355,14 @@ void draw() {
     tabKeyReleased = false;
   }
 
-  // Read the next stroke from Plover log
-  Stroke stroke = utils.getNextStroke(logReader);
-
-  // If the stroke is not null, store it
-  if (stroke != null) {
-    previousStroke = stroke;
-  }
+  // Apply all the strokes received since the last frame
+  drainStrokeQueues();
+  applyStrokeBatch();
+  if (loadTestMonitor != null) updateLoadTest();
 
   // If the lesson just started, add word start avg time. This ensures that
   // the first word doesn't start with extremely low penalty.
-  if (!isLessonStarted && buffer.length() > 0) {
+  if (!isLessonStarted && !buffer.isEmpty()) {
     isLessonStarted = true;
     lessonStartTime = System.currentTimeMillis();
     lastTypedWordTime = lessonStartTime - ((long) 60000.0 / wordStartAvgWpm);
@@ -264,13 +380,213 @@ void draw() {
 
   // Paint background, show text info and draw keyboard
   background(25);
-  showTextInfo(stroke == null ? previousStroke : stroke);
+  showTextInfo(previousStroke);
   drawKeyboard();
+  showLogStatus();
+  if (debug) showDebugInfo();
+  latencyMonitor.recordFrame(strokeBatch, strokeBatchSize, System.currentTimeMillis());
+}
+
+// Allocate a stroke batch large enough to drain all the stroke queues
+void initStrokeBatch() {
+  int size = 0;
+  for (StrokeRingBuffer strokeQueue : strokeQueues) size += strokeQueue.capacity();
+  strokeBatch = new Stroke[size];
+  for (int i = 0; i < strokeBatch.length; i++) strokeBatch[i] = new Stroke();
+}
+
+// Drain all the stroke queues into the stroke batch
+void drainStrokeQueues() {
+  strokeBatchSize = 0;
+  for (int i = 0; i < strokeQueues.size(); i++) {
+    strokeBatchSize += strokeQueues.get(i).drainTo(strokeBatch, strokeBatchSize);
+  }
+}
+
+// Apply the strokes of the current batch in the order Plover wrote
+// them. Strokes, multi-stroke translations and their undo lines
+// arriving in the same frame are all handled in a single pass. Raw
+// steno machine strokes are translated like captured chords.
+void applyStrokeBatch() {
+  for (int i = 0; i < strokeBatchSize; i++) {
+    if (strokeBatch[i].isRaw) applyCapturedChord(strokeBatch[i]);
+    else applyTranslation(strokeBatch[i]);
+  }
+  applyPendingUndo(System.currentTimeMillis());
+}
+
+// Apply a translation or its undo. An undo is held back until the next
+// translation: if that extends the undone outline, Plover is only
+// completing a multi-stroke outline and the undo is not a correction.
+void applyTranslation(Stroke stroke) {
+  if (stroke.isDelete) {
+    if (hasPendingUndo) applyStroke(pendingUndo);
+    pendingUndo.set(stroke);
+    hasPendingUndo = true;
+    return;
+  }
+  if (hasPendingUndo) {
+    hasPendingUndo = false;
+    if (stroke.stroke.startsWith(pendingUndo.stroke + "/")) applyContinuation(stroke);
+    else applyStroke(pendingUndo);
+  }
+  applyStroke(stroke);
+}
+
+// Apply an undo held back for longer than a continuation takes
+void applyPendingUndo(long now) {
+  if (hasPendingUndo && now - pendingUndo.readTime > wordTimeline.continuationWindow) {
+    hasPendingUndo = false;
+    applyStroke(pendingUndo);
+  }
+}
+
+// Record a continuation in the timeline of the word it belongs to. If
+// that word was completed before the strokes were read, the accuracy of
+// its attempt is corrected.
+void applyContinuation(Stroke stroke) {
+  long time = stroke.time > 0 ? stroke.time : stroke.readTime;
+  if (pendingTimingWordIndex >= 0 && dictionary.matchesTrimmed(pendingTimingWordIndex, stroke.word)) {
+    lastWordTimeline.recordContinuation(time);
+    if (lastWordTimeline.completionTime == pendingTimingEnd) {
+      wordStats.get(pendingTimingWordIndex).setLastAccuracy(lastWordTimeline.isAccurate());
+    }
+  } else {
+    wordTimeline.recordContinuation(time);
+  }
+}
+
+// Create an empty load test log and follow it instead of Plover log
+void prepareLoadTest() {
+  if (loadTestLogPath.equals("")) loadTestLogPath = sketchPath + "/data/loadtest.log";
+  try {
+    new FileOutputStream(loadTestLogPath).close();
+  } catch (Exception e) {
+    println("Error while creating load test log: " + e.getMessage());
+  }
+  logFilePath = loadTestLogPath;
+}
+
+// Start writing the load test log with the current lesson
+void startLoadTest() {
+  logLoadGenerator = new LogLoadGenerator(loadTestLogPath, dictionary.store, loadTestRate, loadTestJitter, loadTestErrorRate);
+  loadTestMonitor = new LoadTestMonitor(logLoadGenerator);
+  logLoadGenerator.start();
+}
+
+// Record the strokes of the current batch and update the load test report
+void updateLoadTest() {
+  long now = System.currentTimeMillis();
+  for (int i = 0; i < strokeBatchSize; i++) {
+    loadTestMonitor.recordStroke(strokeBatch[i], now);
+  }
+  long droppedStrokes = 0;
+  int queuedStrokes = 0;
+  for (StrokeRingBuffer strokeQueue : strokeQueues) {
+    droppedStrokes += strokeQueue.droppedStrokes;
+    queuedStrokes += strokeQueue.depth();
+  }
+  loadTestMonitor.update(now, droppedStrokes, queuedStrokes);
+}
+
+// Apply a single stroke read from Plover log
+void applyStroke(Stroke stroke) {
+  applyStroke(stroke, stroke.stroke);
+}
+
+// Apply a single stroke, whose translation was written with the given
+// outline
+void applyStroke(Stroke stroke, String outline) {
+  previousStroke.set(stroke);
+  int pendingWordIndex = pendingTimingWordIndex;
+  if (correctPendingTiming(stroke)) {
+    classifyOutline(pendingWordIndex, outline, stroke.word);
+    return;
+  }
+  long time = stroke.time > 0 ? stroke.time : stroke.readTime;
+  if (stroke.isDelete) {
+    wordTimeline.recordDeleteStroke(time);
+  } else {
+    wordTimeline.recordStroke(time);
+    if (time >= wordTimeline.shownTime) classifyOutline(currentWordIndex, outline, stroke.word);
+  }
+}
+
+// Classify an outline written for the given word, count it in the word
+// stats and update the outline hint, which also shows how many times
+// the word was written that way so far
+void classifyOutline(int wordIndex, String outline, String translation) {
+  int outlineClass = strokeIndex.classify(wordIndex, outline, translation);
+  if (outlineClass == outlinePartial) return;
+  WordStats stats = wordStats.get(wordIndex);
+  stats.addOutline(outlineClass);
+  if (outlineClass == outlineWrongWord) {
+    String writtenWord = strokeIndex.writtenIndex >= 0 ? dictionary.getTrimmedWord(strokeIndex.writtenIndex) : translation.trim();
+    outlineHint = "wrote " + (writtenWord.equals("") ? outline : writtenWord) + getRepeatHint(stats.wrongWordOutlines);
+  } else if (outlineClass == outlineInefficient) {
+    outlineHint = "brief: " + dictionary.getStroke(wordIndex) + getRepeatHint(stats.inefficientOutlines);
+  } else {
+    outlineHint = "";
+  }
+}
+
+// Return the repeat count shown in the outline hint, if any
+String getRepeatHint(int count) {
+  return count > 1 ? " (" + count + " so far)" : "";
+}
+
+// If the current word was matched before the stroke that completed it
+// was read, its time sample, its timeline and the time the next word
+// was shown were measured with frame time. Replace them with the time
+// Plover wrote that stroke. Return true if the stroke belongs to that
+// word.
+boolean correctPendingTiming(Stroke stroke) {
+  if (pendingTimingWordIndex < 0 || stroke.isDelete || stroke.time <= pendingTimingStart) return false;
+  if (!dictionary.matchesTrimmed(pendingTimingWordIndex, stroke.word)) return false;
+  WordStats stats = wordStats.get(pendingTimingWordIndex);
+  stats.typeTime.set(pendingTimingSample, stroke.time - pendingTimingStart);
+  if (lastWordTimeline.completionTime == pendingTimingEnd) {
+    lastWordTimeline.correctCompletion(stroke.time);
+    stats.replaceLastTimeline(lastWordTimeline);
+  }
+  if (wordTimeline.shownTime == pendingTimingEnd) wordTimeline.shownTime = stroke.time;
+  latencyMonitor.recordMatch(stroke, pendingTimingEnd);
+  if (lastTypedWordTime == pendingTimingEnd) lastTypedWordTime = stroke.time;
+  pendingTimingWordIndex = -1;
+  return true;
+}
+
+// Return the time the current word was completed. This is the time
+// stamp of the stroke that completed it, if it has already been read,
+// otherwise the current time, and the word is marked as pending so
+// that correctPendingTiming() can fix its sample later.
+long getWordCompletionTime(boolean forceNextWord) {
+  long now = System.currentTimeMillis();
+  pendingTimingWordIndex = -1;
+  if (forceNextWord) return now;
+  if (!previousStroke.isDelete && previousStroke.time > lastTypedWordTime && previousStroke.time <= now &&
+      dictionary.matchesTrimmed(currentWordIndex, previousStroke.word)) {
+    latencyMonitor.recordMatch(previousStroke, now);
+    return previousStroke.time;
+  }
+  pendingTimingWordIndex = currentWordIndex;
+  pendingTimingSample = wordStats.get(currentWordIndex).typeTime.size();
+  pendingTimingStart = lastTypedWordTime;
+  pendingTimingEnd = now;
+  return now;
 }
 
 void keyPressed() {
+  // Steno keys form chords instead of typing into the input buffer
+  if (chordCapture != null && key != CODED && chordCapture.keyPressed(key, System.currentTimeMillis())) {
+    if (isLessonPaused) tabKeyReleased = true;
+    wordTimeline.recordInput(System.currentTimeMillis());
+    return;
+  }
+
   if (keyCode == BACKSPACE) {
-      buffer = buffer.substring(0, max(0, buffer.length() - 1));
+      buffer.deleteLast();
+      wordTimeline.recordBackspace(System.currentTimeMillis());
   }
 
   // Input buffer update.
@@ -291,7 +607,10 @@ void keyPressed() {
     case RETURN:
       break;
     default:
-      buffer += key;
+      boolean wasMismatch = buffer.isMismatch();
+      buffer.append(key);
+      wordTimeline.recordInput(System.currentTimeMillis());
+      if (!wasMismatch && buffer.isMismatch()) wordTimeline.recordMismatch(System.currentTimeMillis());
     }
   }
 }
@@ -301,6 +620,33 @@ void keyPressed() {
 void keyReleased() {
   // Blacklist command
   if (keyCode == CONTROL) ctrlKeyReleased = true;
+
+  // A chord is complete when all its keys are released
+  if (chordCapture != null && key != CODED &&
+      chordCapture.keyReleased(key, System.currentTimeMillis(), capturedStroke)) {
+    applyCapturedChord(capturedStroke);
+  }
+}
+
+// Translate a captured chord or a raw steno machine stroke using the
+// outline of the current word and apply it. The chord input is shown
+// as typed strokes until it matches the whole outline, then the word is
+// typed. A lone asterisk deletes the last stroke, and wrong strokes
+// must be deleted like in Plover.
+void applyCapturedChord(Stroke stroke) {
+  if (stroke.isDelete) {
+    int lastStrokeIndex = chordInput.lastIndexOf('/');
+    chordInput = lastStrokeIndex < 0 ? "" : chordInput.substring(0, lastStrokeIndex);
+  } else {
+    chordInput = chordInput.equals("") ? stroke.stroke : chordInput + "/" + stroke.stroke;
+  }
+  if (chordInput.equals(dictionary.getStroke(currentWordIndex))) {
+    stroke.word = dictionary.getWord(currentWordIndex);
+    buffer.set(stroke.word);
+  } else {
+    buffer.set(chordInput);
+  }
+  applyStroke(stroke, chordInput);
 }
 
 // Pause/resume the session
@@ -311,6 +657,7 @@ void togglePause() {
     long pauseTime = now - lastPauseTime;
     lessonStartTime += pauseTime;
     lastTypedWordTime += pauseTime;
+    wordTimeline.shift(lastPauseTime, pauseTime);
     isLessonPaused = false;
   } else {
     lastPauseTime = System.currentTimeMillis();
@@ -318,12 +665,49 @@ void togglePause() {
   }
 }
 
+// Generate the lesson text files from a Plover dictionary and a word
+// frequency list, unless they are newer than both, and use that lesson
+void importPloverDictionary() {
+  String lessonPath = sketchPath + "/data/lessons/" + importLessonName;
+  File lesFile = new File(lessonPath + ".les");
+  if (lesFile.lastModified() <= new File(importDictionaryPath).lastModified() ||
+      lesFile.lastModified() <= new File(importFrequencyPath).lastModified()) {
+    long startTime = System.currentTimeMillis();
+    PloverDictionaryImporter importer = new PloverDictionaryImporter();
+    int importedWords = importer.importLesson(importDictionaryPath, importFrequencyPath, lessonPath + ".les", lessonPath + ".chd", importMaxWords);
+    if (importedWords < 0) return;
+    println("Imported " + importedWords + " words from " + importer.entryCount + " Plover dictionary entries in " +
+      (System.currentTimeMillis() - startTime) + " ms");
+  }
+  lessonName = importLessonName;
+}
+
+// Replace the default samples of word stats with the word times found
+// in old Plover logs
+void importLogHistory() {
+  long startTime = System.currentTimeMillis();
+  LogHistoryImporter importer = new LogHistoryImporter(dictionary, wordAvgSamples);
+  WordSamples samples = importer.importLogs(historyLogPaths.split(";"));
+  if (samples == null) return;
+  int seededWords = 0;
+  for (int i = 0; i < dictionary.size(); i++) {
+    int sampleCount = samples.getSampleCount(i);
+    if (sampleCount == 0) continue;
+    ArrayList<Long> typeTime = wordStats.get(i).typeTime;
+    typeTime.clear();
+    for (int j = 0; j < sampleCount; j++) typeTime.add(samples.getSample(i, j));
+    seededWords++;
+  }
+  println("Imported " + importer.importedSamples + " word samples for " + seededWords + " words from " +
+    (importer.importedBytes / (1024 * 1024)) + " MB of Plover logs in " + (System.currentTimeMillis() - startTime) + " ms");
+}
+
 // Apply start blacklist
 void applyStartBlacklist() {
   int totalWords = 0;
   int i = 0;
   while (totalWords < startBaseWords && i < dictionary.size()) {
-    if (wordsBlacklist.contains(dictionary.get(i).word.trim())) {
+    if (dictionary.isBlacklisted(i)) {
       startBaseWords++;
     }
     totalWords++;
@@ -347,6 +731,8 @@ void readSessionConfig() {
   minLevelUpTotalWpm = Integer.valueOf(properties.getProperty("session.minLevelUpTotalWpm", "" + 20));
   wordAvgSamples = Integer.valueOf(properties.getProperty("session.wordAvgSamples", "" + 10));
   wordStartAvgWpm = Integer.valueOf(properties.getProperty("session.wordStartAvgWpm", "" + 20));
+  accuracyPenaltyWeight = Float.valueOf(properties.getProperty("session.accuracyPenaltyWeight", "" + 3));
+  reactionPenaltyWeight = Float.valueOf(properties.getProperty("session.reactionPenaltyWeight", "" + 1));
   isSingleWordBuffer = Boolean.valueOf(properties.getProperty("session.isSingleWordBuffer", "false"));
   isSoundEnabled = Boolean.valueOf(properties.getProperty("session.isSoundEnabled", "true"));
   isAnnounceLevels = Boolean.valueOf(properties.getProperty("session.isAnnounceLevels", "true"));
@@ -355,6 +741,20 @@ void readSessionConfig() {
   showKeyboard = Boolean.valueOf(properties.getProperty("session.showKeyboard", "true"));
   showKeyboardQwerty = Boolean.valueOf(properties.getProperty("session.showKeyboardQwerty", "true"));
   showKeyboardChord = Boolean.valueOf(properties.getProperty("session.showKeyboardChord", "true"));
+  strokeSocketPort = Integer.valueOf(properties.getProperty("session.strokeSocketPort", "" + 0));
+  stenoMachinePath = properties.getProperty("session.stenoMachinePath", "");
+  stenoMachineProtocol = properties.getProperty("session.stenoMachineProtocol", "geminipr");
+  isChordCaptureEnabled = Boolean.valueOf(properties.getProperty("session.isChordCaptureEnabled", "false"));
+  historyLogPaths = properties.getProperty("session.historyLogPaths", "");
+  loadTestRate = Float.valueOf(properties.getProperty("session.loadTestRate", "" + 0));
+  loadTestJitter = Integer.valueOf(properties.getProperty("session.loadTestJitter", "" + 0));
+  loadTestErrorRate = Float.valueOf(properties.getProperty("session.loadTestErrorRate", "" + 0.05));
+  loadTestLogPath = properties.getProperty("session.loadTestLogPath", "");
+  latencyDumpPath = properties.getProperty("session.latencyDumpPath", "");
+  importDictionaryPath = properties.getProperty("session.importDictionaryPath", "");
+  importFrequencyPath = properties.getProperty("session.importFrequencyPath", "");
+  importLessonName = properties.getProperty("session.importLessonName", "imported");
+  importMaxWords = Integer.valueOf(properties.getProperty("session.importMaxWords", "" + 0));
 }
 
 // Automatically find Plover log file path
@@ -378,12 +778,13 @@ void blacklistCurrentWord() {
   // word to blacklist, save blacklist to file and unlock a new word.
   // Finally, move to next word.
   if (isLessonStarted && !isLessonPaused) {
-    wordsBlacklist.add(dictionary.get(currentWordIndex).word);
+    wordsBlacklist.add(dictionary.getWord(currentWordIndex));
+    dictionary.blacklistWord(dictionary.getWord(currentWordIndex));
     utils.writeBlacklist(wordsBlacklist, blkDictionaryFilePath);
     unlockedWords++;
 
     // Make sure that the unlocked world isn't yet another blacklisted word
-    while (wordsBlacklist.contains(dictionary.get(startBaseWords + unlockedWords - 1).word)) unlockedWords++;
+    while (dictionary.isBlacklisted(startBaseWords + unlockedWords - 1)) unlockedWords++;
 
     // Clear and refresh next words buffer
     nextWordsBuffer.goToListEnd();
@@ -403,12 +804,7 @@ void drawKeyboard() {
   }
 
   // If show chord is enabled, show the first chord
-  if (showKeyboardChord) {
-    String[] chords = dictionary.get(currentWordIndex).stroke.split("/");
-    keyboard.draw(chords[0]);
-  } else {
-    keyboard.draw("-");
-  }
+  keyboard.draw(showKeyboardChord ? dictionary.getChordKeys(currentWordIndex) : 0);
 }
 
 // Display all text info shown in StenoTutor window
@@ -434,11 +830,19 @@ void showTextInfo(Stroke stroke) {
   fill(isLessonPaused ? 200 : 250);
   textFont(font,mainTextFontSize);
   nextWordsBuffer.showText(nextWordX, nextWordY);
-  text(buffer.trim() + (System.currentTimeMillis() % 1000 < 500 ? "_" : ""), bufferX, bufferY);
+  String input = buffer.getText();
+  text(input, bufferX, bufferY);
+  if (System.currentTimeMillis() % 1000 < 500) text("_", bufferX + textWidth(input), bufferY);
   fill(200);
   textFont(font, defaultFontSize);
-  text(dictionary.get(currentWordIndex).stroke, nextChordX, nextChordY);
-  text(stroke.isDelete ? "*" : buffer.equals("") ? "" : stroke.stroke, lastChordX, lastChordY);
+  text(dictionary.getStroke(currentWordIndex), nextChordX, nextChordY);
+  String typedChord = stroke.isDelete ? "*" : buffer.isEmpty() ? "" : stroke.stroke;
+  text(typedChord, lastChordX, lastChordY);
+  if (!outlineHint.equals("")) {
+    fill(200, 120, 80);
+    text(outlineHint, lastChordX + textWidth(typedChord) + 20, lastChordY);
+    fill(200);
+  }
   text((int) getAverageWpm(), wpmX, wpmY);
   long timerValue = isLessonStarted ? getElapsedTime() : 0;
   text((int) timerValue/1000, timerX, timerY);
@@ -450,6 +854,55 @@ void showTextInfo(Stroke stroke) {
   text(worstWord, worstWordX, worstWordY);
 }
 
+// Display the state of Plover log, highlighted while it is not followed
+void showLogStatus() {
+  textAlign(LEFT);
+  fill(logTailer.state == logAttached ? 120 : 250);
+  textFont(font, 12);
+  text(logTailer.status, logStatusX, logStatusY);
+}
+
+// Display stroke ingestion counters, only shown when debugging
+void showDebugInfo() {
+  int depth = 0;
+  int capacity = 0;
+  int maxDepth = 0;
+  long offeredStrokes = 0;
+  long droppedStrokes = 0;
+  for (StrokeRingBuffer strokeQueue : strokeQueues) {
+    depth += strokeQueue.depth();
+    capacity += strokeQueue.capacity();
+    maxDepth = max(maxDepth, strokeQueue.maxDepth);
+    offeredStrokes += strokeQueue.offeredStrokes;
+    droppedStrokes += strokeQueue.droppedStrokes;
+  }
+  textAlign(LEFT);
+  fill(120);
+  textFont(font, 12);
+  text("Plover log format: " + logTailer.logFormat.name, 10, frameSizeY - 36);
+  if (loadTestMonitor != null) text(loadTestMonitor.report, 10, frameSizeY - 50);
+  latencyMonitor.draw(10, frameSizeY - 64);
+  if (lastWordTimeline.isComplete()) {
+    text("Last word: reaction " + lastWordTimeline.getReactionTime() + " ms" +
+      ", execution " + lastWordTimeline.getExecutionTime() + " ms" +
+      ", strokes " + lastWordTimeline.strokeCount +
+      ", misstrokes " + lastWordTimeline.getMisstrokes() +
+      ", backspaces " + lastWordTimeline.backspaces +
+      ", deletes " + lastWordTimeline.deleteStrokes, 10, frameSizeY - 120);
+  }
+  text("Stroke queues: " + depth + "/" + capacity +
+    ", max " + maxDepth +
+    ", read " + offeredStrokes +
+    ", dropped " + droppedStrokes, 10, frameSizeY - 8);
+  if (chordCapture != null) {
+    text("Chords: " + chordCapture.capturedChords +
+      ", spread " + chordCapture.lastPressSpread + " ms (avg " + (int) chordCapture.getAvgPressSpread() + ")" +
+      ", release " + chordCapture.lastReleaseSpread + " ms (avg " + (int) chordCapture.getAvgReleaseSpread() + ")" +
+      ", formation " + chordCapture.lastFormationTime + " ms (avg " + (int) chordCapture.getAvgFormationTime() + ")",
+      10, frameSizeY - 22);
+  }
+}
+
 // Get session average WPM
 float getAverageWpm() {
   return isLessonStarted ? (typedWords / (getElapsedTime() / 60000.0)) : 0.0;
@@ -460,14 +913,25 @@ float getAverageWpm() {
 // compute the next word based on word stats. Also, if conditions to
 // level up are met, unlock new words.
 void checkBuffer(boolean forceNextWord) {
-  if (buffer.trim().equals(dictionary.get(currentWordIndex).word) || forceNextWord) {
-    buffer = ""; // Clear input buffer
-    long typeTime = System.currentTimeMillis();
+  if (buffer.isComplete() || forceNextWord) {
+    buffer.clear(); // Clear input buffer
+    chordInput = "";
+    long typeTime = getWordCompletionTime(forceNextWord);
     wordStats.get(currentWordIndex).typeTime.add(typeTime - lastTypedWordTime);
     lastTypedWordTime = typeTime;
+    if (!forceNextWord) {
+      wordTimeline.complete(typeTime);
+      if (wordTimeline.isComplete()) {
+        wordStats.get(currentWordIndex).addTimeline(wordTimeline);
+        wordStats.get(currentWordIndex).addAccuracy(wordTimeline.isAccurate());
+        lastWordTimeline.set(wordTimeline);
+      }
+    }
     typedWords++;
     checkLevelUp();
     currentWordIndex = nextWordsBuffer.getNextWordIndex();
+    buffer.setTarget(dictionary.getWord(currentWordIndex));
+    wordTimeline.start(typeTime);
     updateWorstWord();
 
     // If word dictation is enabled, TTS current word
@@ -482,7 +946,7 @@ void updateWorstWord() {
   int worstWordIndex = 0;
   int tempWorstWordWpm = 500;
   for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-    if (wordsBlacklist.contains(dictionary.get(i).word)) {
+    if (dictionary.isBlacklisted(i)) {
       continue;
     }
     WordStats stats = wordStats.get(i);
@@ -493,7 +957,7 @@ void updateWorstWord() {
     }
   }
   worstWordWpm = tempWorstWordWpm;
-  worstWord = dictionary.get(worstWordIndex).word;
+  worstWord = dictionary.getWord(worstWordIndex);
 }
 
 // Check level up. If conditions to level up are met, unlock new
@@ -502,8 +966,10 @@ void checkLevelUp() {
   if ((int) (typedWords / (getElapsedTime() / 60000.0)) < minLevelUpTotalWpm) {
     return;
   }
+  // Close to leveling up, prepare the words of the next level
+  prefetchNextLevel();
   for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-    if (wordsBlacklist.contains(dictionary.get(i).word)) {
+    if (dictionary.isBlacklisted(i)) {
       continue;
     }
     if (wordStats.get(i).getAvgWpm() < minLevelUpWordWpm) {
@@ -513,6 +979,17 @@ void checkLevelUp() {
   levelUp(); 
 }
 
+// Create the stats of the words the next level will unlock in the
+// background, unless they already exist or are being created
+void prefetchNextLevel() {
+  int from = startBaseWords + unlockedWords;
+  int to = min(dictionary.size(), from + incrementWords);
+  if (from >= to || wordStats.isCreated(from, to)) return;
+  if (lessonPrefetcher != null && lessonPrefetcher.isAlive()) return;
+  lessonPrefetcher = new LessonPrefetcher(wordStats, from, to);
+  lessonPrefetcher.start();
+}
+
 // Level up, unlock new words
 void levelUp() {
   int totalWords = startBaseWords + unlockedWords;
@@ -527,7 +1004,7 @@ void levelUp() {
   unlockedWords += incrementWords;
   if(startBaseWords + unlockedWords > dictionary.size()) unlockedWords = dictionary.size() - startBaseWords;
   while (totalWords < startBaseWords + unlockedWords && i < dictionary.size()) {
-    if (wordsBlacklist.contains(dictionary.get(i).word.trim())) {
+    if (dictionary.isBlacklisted(i)) {
       unlockedWords++;
     }
     totalWords++;
@@ -557,7 +1034,7 @@ void announceLessonCompleted() {
 
 // Announce current word
 void sayCurrentWord() {
-  Speaker speaker = new Speaker(dictionary.get(currentWordIndex).word, tts);
+  Speaker speaker = new Speaker(dictionary.getWord(currentWordIndex), tts);
   speaker.start();
 }
 
@@ -565,7 +1042,7 @@ void sayCurrentWord() {
 int getActualUnlockedWords() {
   int result = 0;
   for (int i = 0; i < startBaseWords + unlockedWords; i++) {
-    if (!wordsBlacklist.contains(dictionary.get(i).word)) {
+    if (!dictionary.isBlacklisted(i)) {
       result++;
     }
   }
@@ -576,6 +1053,6 @@ int getActualUnlockedWords() {
 // Not used in this version, see keyReleased() for the current
 // input buffer update mechanism.
 void updateBuffer(Stroke stroke) {
-  if (stroke.isDelete) buffer = buffer.substring(0, max(0, buffer.length() - stroke.word.length()));
-  else buffer += stroke.word;
+  if (stroke.isDelete) buffer.delete(stroke.word.length());
+  else buffer.append(stroke.word);
 }
@@ -20,4 +20,30 @@
 // This class represents an actual stroke
 public class Stroke extends Word{
   boolean isDelete = false;
+
+  // Whether the stroke comes straight from a steno machine, without a
+  // translation
+  boolean isRaw = false;
+
+  // Time Plover wrote the stroke, in milliseconds since the epoch,
+  // 0 if unknown
+  long time = 0;
+
+  // Times, in milliseconds since the epoch, the stroke was read by its
+  // source, completed a word and was first rendered, 0 if not yet
+  long readTime = 0;
+  long matchTime = 0;
+  long renderTime = 0;
+
+  // Copy the given stroke into this one
+  void set(Stroke other) {
+    stroke = other.stroke;
+    word = other.word;
+    isDelete = other.isDelete;
+    isRaw = other.isRaw;
+    time = other.time;
+    readTime = other.readTime;
+    matchTime = other.matchTime;
+    renderTime = other.renderTime;
+  }
 }
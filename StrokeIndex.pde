@@ -0,0 +1,229 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Classes of a written outline compared to the current word: the start
+// of a longer outline, the current word's outline, another word, or
+// the current word written with more strokes than its outline
+final int outlinePartial = 0;
+final int outlineCorrect = 1;
+final int outlineWrongWord = 2;
+final int outlineInefficient = 3;
+
+// Reverse index of the lesson outlines, built once when the lesson is
+// loaded. It maps each outline to the first word written with it, and
+// each multi-stroke prefix to the first word it starts, so that the
+// outline of an incoming stroke is classified with a few hash lookups
+// and no scan of the lesson. The tables are open-addressing int arrays
+// of entry indexes, keyed by hashes of the stroke bytes in the store
+// and compared against them, so building the index decodes no string.
+public class StrokeIndex {
+  LessonDictionary dictionary;
+  DictionaryStore store;
+
+  // First entry of each outline plus one, 0 if the slot is empty
+  int[] outlineEntries;
+
+  // First entry of each multi-stroke prefix plus one, 0 if the slot is
+  // empty, and the length in bytes of the prefix of that entry's stroke
+  int[] prefixEntries;
+  int[] prefixLengths;
+
+  // First entry with the same trimmed word as each entry, so that two
+  // entries are the same word if they have the same canonical entry
+  int[] canonicalIndexes;
+
+  // UTF-8 bytes of the outline being looked up, reused between lookups
+  byte[] queryBytes = new byte[64];
+  int queryLength = 0;
+
+  // Entry written by the last classified outline, -1 if it is not in
+  // the lesson
+  int writtenIndex = -1;
+
+  // Default constructor
+  StrokeIndex(LessonDictionary dictionary) {
+    this.dictionary = dictionary;
+    store = dictionary.store;
+    int size = store.size();
+    int prefixCount = 0;
+    for (int i = 0; i < size; i++) prefixCount += store.strokeCounts[i] - 1;
+    outlineEntries = new int[getTableSize(size)];
+    prefixEntries = new int[getTableSize(prefixCount)];
+    prefixLengths = new int[prefixEntries.length];
+    canonicalIndexes = new int[size];
+    int[] wordEntries = new int[getTableSize(size)];
+    for (int i = 0; i < size; i++) {
+      int offset = store.strokeOffsets[i];
+      int length = store.strokeLengths[i];
+      int hash = 0;
+      for (int j = 0; j < length; j++) {
+        int b = store.heap.get(offset + j) & 0xFF;
+        if (b == '/') addPrefix(i, j, hash);
+        hash = 31 * hash + b;
+      }
+      addOutline(i, hash);
+      canonicalIndexes[i] = addWord(wordEntries, i);
+    }
+  }
+
+  // Return a power of two table size that keeps the given number of
+  // keys at most half full
+  int getTableSize(int keys) {
+    return Integer.highestOneBit(max(8, keys) - 1) << 2;
+  }
+
+  // Spread a hash over the table
+  int getSlot(int hash, int mask) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  // Store an entry as the first one of its outline, unless one is there
+  void addOutline(int index, int hash) {
+    int offset = store.strokeOffsets[index];
+    int length = store.strokeLengths[index];
+    int mask = outlineEntries.length - 1;
+    int slot = getSlot(hash, mask);
+    while (outlineEntries[slot] != 0) {
+      int other = outlineEntries[slot] - 1;
+      if (store.strokeLengths[other] == length && equalsHeap(store.strokeOffsets[other], offset, length)) return;
+      slot = (slot + 1) & mask;
+    }
+    outlineEntries[slot] = index + 1;
+  }
+
+  // Store an entry as the first one starting with the given prefix of
+  // its stroke, unless one is there
+  void addPrefix(int index, int length, int hash) {
+    int offset = store.strokeOffsets[index];
+    int mask = prefixEntries.length - 1;
+    int slot = getSlot(hash, mask);
+    while (prefixEntries[slot] != 0) {
+      int other = prefixEntries[slot] - 1;
+      if (prefixLengths[slot] == length && equalsHeap(store.strokeOffsets[other], offset, length)) return;
+      slot = (slot + 1) & mask;
+    }
+    prefixEntries[slot] = index + 1;
+    prefixLengths[slot] = length;
+  }
+
+  // Return the first entry with the same trimmed word as the given one,
+  // storing it in the word table if it is the first
+  int addWord(int[] wordEntries, int index) {
+    int offset = store.trimmedWordOffsets[index];
+    int length = store.trimmedWordLengths[index];
+    int hash = 0;
+    for (int i = 0; i < length; i++) hash = 31 * hash + (store.heap.get(offset + i) & 0xFF);
+    int mask = wordEntries.length - 1;
+    int slot = getSlot(hash, mask);
+    while (wordEntries[slot] != 0) {
+      int other = wordEntries[slot] - 1;
+      if (store.trimmedWordLengths[other] == length && equalsHeap(store.trimmedWordOffsets[other], offset, length)) return other;
+      slot = (slot + 1) & mask;
+    }
+    wordEntries[slot] = index + 1;
+    return index;
+  }
+
+  // Whether the heap bytes at two offsets are the same for the given
+  // length
+  boolean equalsHeap(int offset, int otherOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (store.heap.get(offset + i) != store.heap.get(otherOffset + i)) return false;
+    }
+    return true;
+  }
+
+  // Whether the heap bytes at the given offset are the first bytes of
+  // the query
+  boolean equalsQuery(int offset) {
+    for (int i = 0; i < queryLength; i++) {
+      if (store.heap.get(offset + i) != queryBytes[i]) return false;
+    }
+    return true;
+  }
+
+  // Encode an outline into the query bytes and return their hash.
+  // Strokes are ASCII, so they are usually copied char by char.
+  int setQuery(String outline) {
+    queryLength = outline.length();
+    if (queryBytes.length < queryLength) queryBytes = new byte[queryLength * 2];
+    for (int i = 0; i < queryLength; i++) {
+      char c = outline.charAt(i);
+      if (c >= 128) {
+        queryBytes = outline.getBytes(StandardCharsets.UTF_8);
+        queryLength = queryBytes.length;
+        break;
+      }
+      queryBytes[i] = (byte) c;
+    }
+    int hash = 0;
+    for (int i = 0; i < queryLength; i++) hash = 31 * hash + (queryBytes[i] & 0xFF);
+    return hash;
+  }
+
+  // Return the first entry written with the given outline, -1 if none
+  int lookup(String outline) {
+    int mask = outlineEntries.length - 1;
+    for (int slot = getSlot(setQuery(outline), mask); outlineEntries[slot] != 0; slot = (slot + 1) & mask) {
+      int index = outlineEntries[slot] - 1;
+      if (store.strokeLengths[index] == queryLength && equalsQuery(store.strokeOffsets[index])) return index;
+    }
+    return -1;
+  }
+
+  // Whether the given outline starts a longer outline of the lesson
+  boolean isPrefix(String outline) {
+    int mask = prefixEntries.length - 1;
+    for (int slot = getSlot(setQuery(outline), mask); prefixEntries[slot] != 0; slot = (slot + 1) & mask) {
+      if (prefixLengths[slot] == queryLength && equalsQuery(store.strokeOffsets[prefixEntries[slot] - 1])) return true;
+    }
+    return false;
+  }
+
+  // Whether two entries are the same word
+  boolean isSameWord(int index, int otherIndex) {
+    return canonicalIndexes[index] == canonicalIndexes[otherIndex];
+  }
+
+  // Classify an outline written while the word at targetIndex is shown.
+  // The translation Plover gave to it, if known, resolves outlines
+  // that are not in the lesson. The written entry is left in
+  // writtenIndex.
+  int classify(int targetIndex, String outline, String translation) {
+    writtenIndex = lookup(outline);
+    String targetOutline = dictionary.getStroke(targetIndex);
+    if (outline.equals(targetOutline)) return outlineCorrect;
+    if (targetOutline.startsWith(outline) && targetOutline.length() > outline.length() &&
+        targetOutline.charAt(outline.length()) == '/') {
+      return outlinePartial;
+    }
+    int targetStrokes = dictionary.getStrokeCount(targetIndex);
+    if (writtenIndex >= 0) {
+      if (!isSameWord(writtenIndex, targetIndex)) return outlineWrongWord;
+      return dictionary.getStrokeCount(writtenIndex) > targetStrokes ? outlineInefficient : outlineCorrect;
+    }
+    if (isPrefix(outline)) return outlinePartial;
+
+    // Not a lesson outline, maybe one of the learner's own dictionary
+    if (translation.length() > 0 && dictionary.matchesTrimmed(targetIndex, translation)) {
+      return countStrokes(outline) > targetStrokes ? outlineInefficient : outlineCorrect;
+    }
+    return outlineWrongWord;
+  }
+}
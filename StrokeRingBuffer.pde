@@ -0,0 +1,98 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free single-producer/single-consumer queue of strokes. Slots
+// are preallocated: the producer copies each stroke into a free slot
+// and the consumer copies it out, so neither side ever blocks. When
+// the queue is full, new strokes are dropped and counted.
+public class StrokeRingBuffer {
+  // Preallocated slots, capacity is a power of two
+  Stroke[] slots;
+  int mask;
+
+  // Next slot to read, only written by the consumer
+  AtomicLong head = new AtomicLong();
+
+  // Next slot to write, only written by the producer
+  AtomicLong tail = new AtomicLong();
+
+  // Producer side counters
+  volatile long offeredStrokes = 0;
+  volatile long droppedStrokes = 0;
+  volatile int maxDepth = 0;
+
+  // Default constructor, capacity is rounded up to a power of two
+  StrokeRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(max(2, capacity - 1)) << 1;
+    slots = new Stroke[size];
+    for (int i = 0; i < size; i++) slots[i] = new Stroke();
+    mask = size - 1;
+  }
+
+  // Producer only. Copy the stroke into the queue, return false if
+  // the queue is full and the stroke has been dropped.
+  boolean offer(Stroke stroke) {
+    long currentTail = tail.get();
+    offeredStrokes++;
+    int depth = (int) (currentTail - head.get());
+    if (depth == slots.length) {
+      droppedStrokes++;
+      return false;
+    }
+    slots[(int) currentTail & mask].set(stroke);
+    tail.lazySet(currentTail + 1);
+    if (depth + 1 > maxDepth) maxDepth = depth + 1;
+    return true;
+  }
+
+  // Consumer only. Copy the oldest stroke into target, return false
+  // if the queue is empty.
+  boolean poll(Stroke target) {
+    long currentHead = head.get();
+    if (currentHead == tail.get()) return false;
+    target.set(slots[(int) currentHead & mask]);
+    head.lazySet(currentHead + 1);
+    return true;
+  }
+
+  // Consumer only. Copy all the waiting strokes that fit into the given
+  // batch, starting at offset, in arrival order and release their slots
+  // at once. Return the number of copied strokes.
+  int drainTo(Stroke[] batch, int offset) {
+    long currentHead = head.get();
+    int count = min(batch.length - offset, (int) (tail.get() - currentHead));
+    for (int i = 0; i < count; i++) {
+      batch[offset + i].set(slots[(int) (currentHead + i) & mask]);
+    }
+    if (count > 0) head.lazySet(currentHead + count);
+    return count;
+  }
+
+  // Number of strokes waiting to be consumed
+  int depth() {
+    return (int) (tail.get() - head.get());
+  }
+
+  // Queue capacity
+  int capacity() {
+    return slots.length;
+  }
+}
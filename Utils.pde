@@ -22,76 +22,69 @@ import java.util.ArrayList;
 // Provides various helper methods
 public class Utils {
 
-  // Read lesson dictionary and add words and corresponing strokes
-  // to the returned dictionary
-  public ArrayList<Word> readDictionary(String lesDictionaryFilePath, String chdDictionaryFilePath, boolean debug) {
-    String tempLine = null;
-    BufferedReader lesReader = null;
-    BufferedReader chdReader = null;
-    ArrayList<String> words = new ArrayList<String>();
-    ArrayList<String> strokes = new ArrayList<String>();
-    ArrayList<Word> dictionary = new ArrayList<Word>();
-
-    // Read and store words
+  // Read lesson dictionary. The .les, .chd and .blk files are compiled
+  // into a binary lesson, keyed by a checksum of their content, the first
+  // time and whenever they change. The compiled lesson is then
+  // memory-mapped and read in place by a DictionaryStore.
+  public LessonDictionary readDictionary(String lesDictionaryFilePath, String chdDictionaryFilePath, String blkDictionaryFilePath, ArrayList<String> wordsBlacklist, boolean debug) {
+    String compiledFilePath = lesDictionaryFilePath.substring(0, lesDictionaryFilePath.lastIndexOf('.')) + compiledLessonExtension;
+    LessonCompiler compiler = new LessonCompiler();
+    long checksum = 0;
     try {
-      Reader reader = new FileReader(lesDictionaryFilePath);
-      lesReader = new BufferedReader(reader);
-      while ((tempLine = lesReader.readLine()) != null) {
-        if (tempLine.length() != 0 && tempLine.charAt(0) == '<' || tempLine.trim().length() == 0) continue;
-        String[] newWords = tempLine.split(" ");
-        for (String word : newWords) {
-          words.add(word);
-        }
-      }
+      checksum = compiler.getSourceChecksum(new String[] {lesDictionaryFilePath, chdDictionaryFilePath, blkDictionaryFilePath});
+    } catch (IOException e) {
+      println("Error while reading lesson: " + e.getMessage());
     }
-    catch (Exception e) {
-      println("Error while reading .les dictionary file: " + e.getMessage());
+    CompiledLesson lesson = null;
+    if (new File(compiledFilePath).exists()) {
+      lesson = mapCompiledLesson(compiledFilePath, checksum);
+    }
+    if (lesson == null) {
+      lesson = compileLesson(compiler, lesDictionaryFilePath, chdDictionaryFilePath, wordsBlacklist, checksum, compiledFilePath);
     }
-    if (lesReader != null) {
-      try {
-        lesReader.close();
-      } catch (Exception e) {
 
-      }
+    // Debug info
+    if (debug) {
+      println("Current lesson contains " + lesson.size() + " words and chords.");
     }
 
-    // Read and store strokes
+    return new LessonDictionary(new DictionaryStore(lesson));
+  }
+
+  // Memory-map a compiled lesson, return null if it cannot be read, is
+  // not valid or was compiled from different source files
+  CompiledLesson mapCompiledLesson(String compiledFilePath, long checksum) {
+    FileChannel channel = null;
+    CompiledLesson lesson = null;
     try {
-      Reader reader = new FileReader(chdDictionaryFilePath);
-      chdReader = new BufferedReader(reader);
-      while ((tempLine = chdReader.readLine()) != null) {
-        if (tempLine.length() != 0 && tempLine.charAt(0) == '<' || tempLine.trim().length() == 0) continue;
-        String[] newStrokes = tempLine.split(" ");
-        for (String stroke : newStrokes) {
-          strokes.add(stroke);
-        }
-      }
-    }
-    catch (Exception e) {
-      println("Error while reading .chd dictionary file: " + e.getMessage());
+      channel = FileChannel.open(Paths.get(compiledFilePath), StandardOpenOption.READ);
+      lesson = new CompiledLesson(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (Exception e) {
+      println("Error while reading compiled lesson: " + e.getMessage());
     }
-    if (chdReader != null) {
+    if (channel != null) {
       try {
-        chdReader.close();
+        channel.close();
       } catch (Exception e) {
 
       }
     }
+    return lesson != null && lesson.isValid(checksum) ? lesson : null;
+  }
 
-    // Store words and strokes in dictionary list
-    if (words != null && strokes != null) for (int i = 0; i < words.size(); i++) {
-      Word word = new Word();
-      word.word = words.get(i);
-      word.stroke = strokes.get(i);
-      dictionary.add(word);
-    }
-
-    // Debug info
-    if (debug) {
-      println("Current lesson contains " + words.size() + " words and " + strokes.size() + " chords.");
+  // Compile the lesson text files and store the result. If it cannot be
+  // stored, the compiled lesson is only used from memory. Lessons with
+  // problems are not stored either, so that they are validated and their
+  // problems printed on every load until they are fixed.
+  CompiledLesson compileLesson(LessonCompiler compiler, String lesDictionaryFilePath, String chdDictionaryFilePath, ArrayList<String> wordsBlacklist, long checksum, String compiledFilePath) {
+    ByteBuffer image = compiler.compile(lesDictionaryFilePath, chdDictionaryFilePath, wordsBlacklist, checksum);
+    if (compiler.hasProblems) return new CompiledLesson(image);
+    try {
+      compiler.write(image, compiledFilePath);
+    } catch (Exception e) {
+      println("Error while writing compiled lesson: " + e.getMessage());
     }
-
-    return dictionary;
+    return new CompiledLesson(image);
   }
 
   // Read lesson blacklist (if any) and add blacklisted words
@@ -151,63 +144,13 @@ public class Utils {
     }
   }
 
-  // Initialize Plover log reader and go to end of file
-  BufferedReader readEndOfFile(String logFilePath) {
-    BufferedReader logReader = null;
-    String line = null;
-    String tempLine = null;
-    try {
-      Reader reader = new FileReader(logFilePath);
-      logReader = new BufferedReader(reader);
-      while ((tempLine = logReader.readLine()) != null) {
-        line = tempLine;
-      }
-    }
-    catch (Exception e) {
-      println("Error while reading Plover log file: " + e.getMessage());
-    }
-    return logReader;
-  }
-
-  // Get next stroke from Plover log file
-  Stroke getNextStroke(BufferedReader logReader) {
-    Stroke stroke = new Stroke();
-    String line = null;
-    try {
-      line = logReader.readLine();
-      int indexOfTransl = -1;
-      if(line != null) indexOfTransl = line.indexOf("Translation");
-      if(line != null && indexOfTransl > -1) {
-        boolean isMultipleWorld = false;
-        int indexOfLast = 1 + line.indexOf(",) : ");
-        if (indexOfLast < 1) {
-          isMultipleWorld = true;
-          indexOfLast = line.indexOf(" : ");
-        }
-        if (indexOfTransl == 24) {
-          stroke.isDelete = false;
-        }
-        else {
-          stroke.isDelete = true;
-        }
-        stroke.stroke = getStroke(line, indexOfTransl + 14, indexOfLast - 2);
-        stroke.word = line.substring(indexOfLast + (isMultipleWorld ? 2 : 3), line.length() - 1);
-        return stroke;
-      } else {
-        return null;
-      }
-    } catch (Exception e) {
-      println("Error while reading stroke from Plover log file: " + e.getMessage());
-    }
-    return null;
-  }
-
-  // Format strokes and multiple strokes for a single word.
-  String getStroke(String line, int start, int end) {
-    String result = "";
-    String strokeLine = line.substring(start, end);
-    String[] strokes = strokeLine.split("', '");
-    for (String stroke: strokes) result += stroke + "/";
-    return result.substring(0, result.length() - 1);
+  // Whether text equals word once leading and trailing whitespace is
+  // ignored. Same as text.trim().equals(word), without allocating.
+  boolean equalsTrimmed(String text, String word) {
+    int start = 0;
+    int end = text.length();
+    while (start < end && text.charAt(start) <= ' ') start++;
+    while (end > start && text.charAt(end - 1) <= ' ') end--;
+    return end - start == word.length() && text.regionMatches(start, word, 0, end - start);
   }
 }
@@ -22,13 +22,31 @@
 public class WordStats {
   ArrayList<Long> typeTime = new ArrayList<Long>();
   ArrayList<Boolean> isAccurate = new ArrayList<Boolean>();
+
+  // Number of inaccurate attempts among the last averageSamples ones
+  int recentInaccurateCount = 0;
+
+  // Reaction and execution time of the last averageSamples completed
+  // attempts, see WordTimeline, in ring buffers allocated with the first
+  // attempt, and their totals
+  long[] reactionTimes;
+  long[] executionTimes;
+  int timelineCount = 0;
+  long totalReactionTime = 0;
+  long totalExecutionTime = 0;
   int averageSamples;
 
+  // Number of outlines written for this word that gave another word,
+  // and that used more strokes than the lesson outline, see StrokeIndex.
+  // They are shown in the outline hint.
+  int wrongWordOutlines = 0;
+  int inefficientOutlines = 0;
+
   // Standard constructor. Add a low performance record by default.
   public WordStats(int startAverageWpm, int averageSamples) {
     this.averageSamples = averageSamples;
     typeTime.add((long) 60000.0 / startAverageWpm);
-    isAccurate.add(false); // this field is not used in the current version
+    addAccuracy(false);
   }
 
   // Get average WPM for this word
@@ -42,16 +60,147 @@ public class WordStats {
     }
   }
 
-  // Return the word penalty score. In this version, only speed is
-  // taking into account
+  // Store the accuracy of an attempt, updating the count of recent
+  // inaccurate attempts in constant time
+  void addAccuracy(boolean accurate) {
+    isAccurate.add(accurate);
+    if (!accurate) recentInaccurateCount++;
+    int expiredIndex = isAccurate.size() - 1 - averageSamples;
+    if (expiredIndex >= 0 && !isAccurate.get(expiredIndex)) recentInaccurateCount--;
+  }
+
+  // Replace the accuracy of the last attempt, when it is known better
+  // after the attempt was stored
+  void setLastAccuracy(boolean accurate) {
+    int last = isAccurate.size() - 1;
+    if (last < 0 || isAccurate.get(last) == accurate) return;
+    isAccurate.set(last, accurate);
+    recentInaccurateCount += accurate ? -1 : 1;
+  }
+
+  // Get the share of inaccurate attempts among the recent ones
+  float getInaccuracy() {
+    return recentInaccurateCount * 1.0 / min(isAccurate.size(), averageSamples);
+  }
+
+  // Store reaction and execution time of a completed attempt, replacing
+  // the oldest one and updating the totals in constant time
+  void addTimeline(WordTimeline timeline) {
+    if (reactionTimes == null) {
+      reactionTimes = new long[averageSamples];
+      executionTimes = new long[averageSamples];
+    }
+    int slot = timelineCount % averageSamples;
+    if (timelineCount >= averageSamples) {
+      totalReactionTime -= reactionTimes[slot];
+      totalExecutionTime -= executionTimes[slot];
+    }
+    reactionTimes[slot] = timeline.getReactionTime();
+    executionTimes[slot] = timeline.getExecutionTime();
+    totalReactionTime += reactionTimes[slot];
+    totalExecutionTime += executionTimes[slot];
+    timelineCount++;
+  }
+
+  // Replace reaction and execution time of the last completed attempt,
+  // when they are known better after the attempt was stored
+  void replaceLastTimeline(WordTimeline timeline) {
+    if (timelineCount == 0) return;
+    int slot = (timelineCount - 1) % averageSamples;
+    totalReactionTime -= reactionTimes[slot];
+    totalExecutionTime -= executionTimes[slot];
+    reactionTimes[slot] = timeline.getReactionTime();
+    executionTimes[slot] = timeline.getExecutionTime();
+    totalReactionTime += reactionTimes[slot];
+    totalExecutionTime += executionTimes[slot];
+  }
+
+  // Count an outline written for this word, classified by StrokeIndex
+  void addOutline(int outlineClass) {
+    if (outlineClass == outlineWrongWord) wrongWordOutlines++;
+    else if (outlineClass == outlineInefficient) inefficientOutlines++;
+  }
+
+  // Get the share of recent attempt time spent recognizing the word,
+  // before the first input, 0 if unknown
+  float getHesitation() {
+    long totalTime = totalReactionTime + totalExecutionTime;
+    return totalTime <= 0 ? 0 : totalReactionTime * 1.0 / totalTime;
+  }
+
+  // Return the word penalty score. It grows with the time taken to type
+  // the word, with the share of recent inaccurate attempts and with the
+  // share of time spent recognizing it, so that words typed fast but
+  // often wrong, or typed fast only after a hesitation, are still
+  // drilled.
   long getWordPenalty() {
     long timePenalty = 0;
     if (typeTime.size() > 0) {
       for (int i = typeTime.size() - averageSamples; i < typeTime.size(); i++) timePenalty += typeTime.get(max(i, 0));
-      // The returned value is directly proportional to timePenalty^3
-      return timePenalty * timePenalty / 2000 * timePenalty;
+      // The speed penalty is directly proportional to timePenalty^3
+      long speedPenalty = timePenalty * timePenalty / 2000 * timePenalty;
+      return (long) ((double) speedPenalty * (1 + accuracyPenaltyWeight * getInaccuracy()) * (1 + reactionPenaltyWeight * getHesitation()));
     } else {
       return 9999999999L;
     }
   }
 }
+
+// Stats of all the lesson words, created a chunk at a time the first
+// time one of them is read, so a large lesson only costs what has been
+// unlocked so far. Chunks can also be created in the background, see
+// LessonPrefetcher.
+public class WordStatsList extends AbstractList<WordStats> {
+  AtomicReferenceArray<WordStats[]> chunks;
+  int size;
+
+  // Values given to new word stats
+  int startAverageWpm;
+  int averageSamples;
+
+  // Default constructor
+  WordStatsList(int size, int startAverageWpm, int averageSamples) {
+    this.size = size;
+    this.startAverageWpm = startAverageWpm;
+    this.averageSamples = averageSamples;
+    chunks = new AtomicReferenceArray<WordStats[]>((size + lessonChunkSize - 1) / lessonChunkSize);
+  }
+
+  // Return the stats of the given word, creating its chunk if needed
+  WordStats get(int index) {
+    if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    WordStats[] chunk = chunks.get(index / lessonChunkSize);
+    if (chunk == null) chunk = createChunk(index / lessonChunkSize);
+    return chunk[index % lessonChunkSize];
+  }
+
+  // Number of words
+  int size() {
+    return size;
+  }
+
+  // Whether all the chunks of the given index range have been created
+  boolean isCreated(int from, int to) {
+    for (int i = from / lessonChunkSize; i < chunks.length() && i * lessonChunkSize < to; i++) {
+      if (chunks.get(i) == null) return false;
+    }
+    return true;
+  }
+
+  // Create all the chunks of the given index range
+  void create(int from, int to) {
+    for (int i = from / lessonChunkSize; i < chunks.length() && i * lessonChunkSize < to; i++) {
+      if (chunks.get(i) == null) createChunk(i);
+    }
+  }
+
+  // Create the stats of a chunk, keeping the first one stored if another
+  // thread creates it at the same time
+  WordStats[] createChunk(int chunkIndex) {
+    int start = chunkIndex * lessonChunkSize;
+    WordStats[] chunk = new WordStats[min(lessonChunkSize, size - start)];
+    for (int i = 0; i < chunk.length; i++) chunk[i] = new WordStats(startAverageWpm, averageSamples);
+    if (!chunks.compareAndSet(chunkIndex, null, chunk)) chunk = chunks.get(chunkIndex);
+    return chunk;
+  }
+}
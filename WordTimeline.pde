@@ -0,0 +1,200 @@
+/*
+ *   This file is part of StenoTutor.
+ *
+ *   StenoTutor is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   StenoTutor is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Emanuele Caruso. See LICENSE.txt for details.
+ */
+
+// Timeline of a single attempt at typing a word: when it was shown,
+// when the first input arrived, when each stroke was written, when it
+// was completed, and how many corrections were made. Reaction time is
+// the time taken to recognize the word, execution time the time taken
+// to type it. The same instance is reused for each attempt, so nothing
+// is allocated while typing.
+//
+// When a multi-stroke outline is written with Plover, each stroke after
+// the first undoes the partial translation and replaces its output with
+// backspaces. Such continuations are not corrections: the replacement
+// backspaces and the mismatch of the partial output are discounted.
+public class WordTimeline {
+  // Times in milliseconds since the epoch, 0 if not happened yet
+  long shownTime = 0;
+  long firstInputTime = 0;
+  long completionTime = 0;
+
+  // Times of the strokes of this attempt. Only the first strokes are
+  // stored, but all of them are counted.
+  long[] strokeTimes = new long[32];
+  int strokeCount = 0;
+
+  // Number of backspaces, delete strokes and times the input stopped
+  // matching the word
+  int backspaces = 0;
+  int deleteStrokes = 0;
+  int mismatches = 0;
+
+  // Times of the last backspaces, indexed by count modulo their length,
+  // and of the last mismatch
+  long[] backspaceTimes = new long[32];
+  long lastMismatchTime = 0;
+
+  // Backspaces typed by Plover to replace a partial translation arrive
+  // within this time of its continuation
+  final long continuationWindow = 100;
+  long lastContinuationTime = 0;
+
+  // Start a new attempt for a word shown at the given time
+  void start(long time) {
+    shownTime = time;
+    firstInputTime = 0;
+    completionTime = 0;
+    strokeCount = 0;
+    backspaces = 0;
+    deleteStrokes = 0;
+    mismatches = 0;
+    lastMismatchTime = 0;
+    lastContinuationTime = 0;
+  }
+
+  // Whether the attempt has been started and not yet completed
+  boolean isRunning() {
+    return shownTime > 0 && completionTime == 0;
+  }
+
+  // Record any input, keeping the earliest one. Input older than the
+  // word belongs to the previous attempt and is ignored.
+  void recordInput(long time) {
+    if (!isRunning() || time < shownTime) return;
+    if (firstInputTime == 0 || time < firstInputTime) firstInputTime = time;
+  }
+
+  // Record a stroke written at the given time
+  void recordStroke(long time) {
+    if (!isRunning() || time < shownTime) return;
+    recordInput(time);
+    if (strokeCount < strokeTimes.length) strokeTimes[strokeCount] = time;
+    strokeCount++;
+  }
+
+  // Record a backspace typed at the given time
+  void recordBackspace(long time) {
+    if (!isRunning()) return;
+    recordInput(time);
+    if (lastContinuationTime > 0 && time <= lastContinuationTime + continuationWindow) return;
+    backspaceTimes[backspaces % backspaceTimes.length] = time;
+    backspaces++;
+  }
+
+  // Record a delete stroke written at the given time
+  void recordDeleteStroke(long time) {
+    if (!isRunning() || time < shownTime) return;
+    recordInput(time);
+    deleteStrokes++;
+  }
+
+  // Record the input ceasing to match the word at the given time
+  void recordMismatch(long time) {
+    if (!isRunning()) return;
+    mismatches++;
+    lastMismatchTime = time;
+  }
+
+  // Record a partial translation being extended by the stroke written
+  // at the given time. Backspaces typed around it replaced the partial
+  // output. If that output broke the match and was not corrected by
+  // hand, its mismatch is not a misstroke either. Backspaces arriving
+  // later within continuationWindow are ignored.
+  void recordContinuation(long time) {
+    int discounted = 0;
+    while (backspaces > 0 && discounted < backspaceTimes.length &&
+        backspaceTimes[(backspaces - 1) % backspaceTimes.length] >= time - continuationWindow) {
+      backspaces--;
+      discounted++;
+    }
+    boolean isCorrectedByHand = backspaces > 0 && backspaceTimes[(backspaces - 1) % backspaceTimes.length] >= lastMismatchTime;
+    if (mismatches > 0 && lastMismatchTime > lastContinuationTime && !isCorrectedByHand) mismatches--;
+    lastContinuationTime = time;
+  }
+
+  // Number of misstrokes. With Plover, a wrong stroke usually both
+  // breaks the match and is undone by a delete stroke, so it is only
+  // counted once.
+  int getMisstrokes() {
+    return max(mismatches, deleteStrokes);
+  }
+
+  // Whether the word was typed without errors and corrections
+  boolean isAccurate() {
+    return getMisstrokes() == 0 && backspaces == 0;
+  }
+
+  // Complete the attempt at the given time
+  void complete(long time) {
+    if (!isRunning()) return;
+    if (firstInputTime == 0 || firstInputTime > time) firstInputTime = time;
+    completionTime = time;
+  }
+
+  // Move the completion of the attempt to the time the stroke that
+  // completed it was written, when that stroke is read after the word
+  // was matched. The stroke is counted, and input that seemed to come
+  // before it cannot have.
+  void correctCompletion(long time) {
+    if (completionTime == 0 || time < shownTime) return;
+    if (strokeCount < strokeTimes.length) strokeTimes[strokeCount] = time;
+    strokeCount++;
+    if (firstInputTime > time) firstInputTime = time;
+    completionTime = time;
+  }
+
+  // Whether the attempt has been completed with all its times known
+  boolean isComplete() {
+    return shownTime > 0 && completionTime > 0;
+  }
+
+  // Time from the word being shown to the first input
+  long getReactionTime() {
+    return firstInputTime - shownTime;
+  }
+
+  // Time from the first input to the completion of the word
+  long getExecutionTime() {
+    return completionTime - firstInputTime;
+  }
+
+  // Move the times recorded before a pause forward by its duration
+  void shift(long pauseStart, long pauseTime) {
+    if (shownTime > 0 && shownTime <= pauseStart) shownTime += pauseTime;
+    if (firstInputTime > 0 && firstInputTime <= pauseStart) firstInputTime += pauseTime;
+    for (int i = 0; i < min(strokeCount, strokeTimes.length); i++) {
+      if (strokeTimes[i] <= pauseStart) strokeTimes[i] += pauseTime;
+    }
+  }
+
+  // Copy the given timeline into this one
+  void set(WordTimeline other) {
+    shownTime = other.shownTime;
+    firstInputTime = other.firstInputTime;
+    completionTime = other.completionTime;
+    System.arraycopy(other.strokeTimes, 0, strokeTimes, 0, strokeTimes.length);
+    strokeCount = other.strokeCount;
+    backspaces = other.backspaces;
+    deleteStrokes = other.deleteStrokes;
+    mismatches = other.mismatches;
+    System.arraycopy(other.backspaceTimes, 0, backspaceTimes, 0, backspaceTimes.length);
+    lastMismatchTime = other.lastMismatchTime;
+    lastContinuationTime = other.lastContinuationTime;
+  }
+}